@@ -0,0 +1,50 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Test content shared by the workloads: sprite-like frames of a few solid shapes with some
+ * noise on a partly transparent canvas, and animations that move them around.
+ */
+final class BenchFrames {
+    private static final int[] COLORS = {0xFFE04040, 0xFF40A040, 0xFF4060E0, 0xFFF0D030, 0xFF202020};
+
+    private BenchFrames() {}
+
+    static PixelBuffer sprite(int width, int height, long seed) {
+        PixelBuffer frame = new PixelBuffer(width, height);
+        Random rnd = new Random(seed);
+        for (int shape = 0; shape < 12; shape++) {
+            int x0 = rnd.nextInt(width), y0 = rnd.nextInt(height);
+            int w = 1 + rnd.nextInt(Math.max(1, width / 3)), h = 1 + rnd.nextInt(Math.max(1, height / 3));
+            int argb = COLORS[rnd.nextInt(COLORS.length)];
+            for (int y = y0; y < Math.min(height, y0 + h); y++)
+                for (int x = x0; x < Math.min(width, x0 + w); x++) frame.set(x, y, argb);
+        }
+        for (int i = 0; i < width * height / 20; i++) {
+            frame.set(rnd.nextInt(width), rnd.nextInt(height), COLORS[rnd.nextInt(COLORS.length)]);
+        }
+        return frame;
+    }
+
+    /**
+     * A still background with a small sprite walking across it, the usual shape of
+     * a pixel-art animation.
+     */
+    static List<AnimationFrame> animation(int size, int count) {
+        PixelBuffer background = sprite(size, size, 42);
+        PixelBuffer walker = sprite(Math.max(1, size / 4), Math.max(1, size / 4), 7);
+        List<AnimationFrame> frames = new ArrayList<>(count);
+        for (int f = 0; f < count; f++) {
+            PixelBuffer frame = background.copy();
+            int ox = f % size, oy = size / 2;
+            for (int y = 0; y < walker.getHeight(); y++)
+                for (int x = 0; x < walker.getWidth(); x++) {
+                    int argb = walker.get(x, y);
+                    if (argb != PixelBuffer.TRANSPARENT) frame.set((ox + x) % size, (oy + y) % size, argb);
+                }
+            frames.add(new AnimationFrame(frame, 80));
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,53 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import bench.RasterWorkload;
+
+/**
+ * Renders a sprite frame through FrameRasterizer and through the fillRect loop it replaced.
+ */
+public class FrameRasterizerWorkload implements RasterWorkload {
+    private PixelBuffer frame;
+    private int pixelSize;
+    private int backgroundMode;
+    private BufferedImage reuse;
+
+    @Override
+    public void setup(int size, int pixelSize, int backgroundMode) {
+        this.pixelSize = pixelSize;
+        this.backgroundMode = backgroundMode;
+        frame = BenchFrames.sprite(size, size, 42);
+        reuse = null;
+    }
+
+    @Override
+    public Object renderRasterizer() {
+        reuse = FrameRasterizer.renderImage(frame, pixelSize, FrameRasterizer.backgroundArgb(backgroundMode), reuse);
+        return reuse;
+    }
+
+    // The renderToImage loop as it was before FrameRasterizer
+    @Override
+    public Object renderGraphics2D() {
+        int cols = frame.getWidth(), rows = frame.getHeight();
+        BufferedImage img = new BufferedImage(cols * pixelSize, rows * pixelSize, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        if (backgroundMode != 2) {
+            g.setColor(backgroundMode == 1 ? Color.BLACK : Color.WHITE);
+            g.fillRect(0, 0, img.getWidth(), img.getHeight());
+        }
+        int lastArgb = PixelBuffer.TRANSPARENT;
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                int argb = frame.get(x, y);
+                if (argb != PixelBuffer.TRANSPARENT) {
+                    if (argb != lastArgb) { g.setColor(new Color(argb, true)); lastArgb = argb; }
+                    g.fillRect(x * pixelSize, y * pixelSize, pixelSize, pixelSize);
+                }
+            }
+        }
+        g.dispose();
+        return img;
+    }
+}
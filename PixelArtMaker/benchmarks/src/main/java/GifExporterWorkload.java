@@ -0,0 +1,24 @@
+import java.io.File;
+
+import bench.GifWorkload;
+
+/**
+ * Exports an animation with GifExporter into a temporary file.
+ */
+public class GifExporterWorkload implements GifWorkload {
+    private GifExporter exporter;
+    private File file;
+
+    @Override
+    public void setup(int size, int frameCount, int pixelSize) throws Exception {
+        exporter = new GifExporter(BenchFrames.animation(size, frameCount), pixelSize, 0);
+        file = File.createTempFile("bench", ".gif");
+        file.deleteOnExit();
+    }
+
+    @Override
+    public Object export() throws Exception {
+        exporter.export(file, ExportProgress.NONE);
+        return file;
+    }
+}
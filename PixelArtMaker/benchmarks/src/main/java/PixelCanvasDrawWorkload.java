@@ -0,0 +1,46 @@
+import java.awt.Color;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+
+import bench.DrawWorkload;
+
+/**
+ * Feeds synthetic mouse events to a PixelCanvas, so a stroke takes the same path as
+ * in the editor: history snapshot, shape previews while dragging, and the final shape.
+ * The color alternates between strokes so the bucket fill always has something to change.
+ */
+public class PixelCanvasDrawWorkload implements DrawWorkload {
+    private static final int PIXEL_SIZE = 8;
+    private static final int DRAG_STEPS = 8;
+
+    private PixelArtMaker.PixelCanvas canvas;
+    private int size;
+    private boolean odd;
+
+    @Override
+    public void setup(int size, int tool) {
+        this.size = size;
+        canvas = new PixelArtMaker.PixelCanvas(size, size, PIXEL_SIZE);
+        canvas.setSize(size * PIXEL_SIZE, size * PIXEL_SIZE);
+        canvas.setDrawingTool(tool);
+    }
+
+    @Override
+    public Object stroke() {
+        // Corner to corner, so shapes cover most of the canvas
+        int from = PIXEL_SIZE / 2, to = (size - 1) * PIXEL_SIZE + PIXEL_SIZE / 2;
+        odd = !odd;
+        canvas.setCurrentColor(odd ? Color.BLACK : Color.RED);
+        canvas.mousePressed(event(MouseEvent.MOUSE_PRESSED, from, from));
+        for (int i = 1; i <= DRAG_STEPS; i++) {
+            int p = from + (to - from) * i / DRAG_STEPS;
+            canvas.mouseDragged(event(MouseEvent.MOUSE_DRAGGED, p, p / 2));
+        }
+        canvas.mouseReleased(event(MouseEvent.MOUSE_RELEASED, to, to / 2));
+        return canvas;
+    }
+
+    private MouseEvent event(int id, int x, int y) {
+        return new MouseEvent(canvas, id, 0L, InputEvent.BUTTON1_DOWN_MASK, x, y, 1, false, MouseEvent.BUTTON1);
+    }
+}
@@ -0,0 +1,46 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import bench.CanvasWorkload;
+
+/**
+ * Drives a PixelCanvas that is never shown, so it runs headless.
+ */
+public class PixelCanvasWorkload implements CanvasWorkload {
+    private PixelArtMaker.PixelCanvas canvas;
+    private BufferedImage screen;
+    private BufferedImage source;
+
+    @Override
+    public void setup(int size, int pixelSize, int backgroundMode) {
+        canvas = new PixelArtMaker.PixelCanvas(size, size, pixelSize);
+        canvas.setBackgroundMode(backgroundMode);
+        canvas.setGrid(BenchFrames.sprite(size, size, 42));
+        canvas.setSize(size * pixelSize, size * pixelSize);
+        screen = new BufferedImage(size * pixelSize, size * pixelSize, BufferedImage.TYPE_INT_RGB);
+        source = BenchFrames.sprite(size, size, 43).getImage();
+    }
+
+    @Override
+    public Object paint() {
+        Graphics2D g = screen.createGraphics();
+        try {
+            g.setClip(0, 0, screen.getWidth(), screen.getHeight());
+            canvas.paintComponent(g);
+        } finally {
+            g.dispose();
+        }
+        return screen;
+    }
+
+    @Override
+    public Object renderToImage() {
+        return canvas.renderToImage();
+    }
+
+    @Override
+    public Object loadFromImage() {
+        canvas.loadFromImage(source);
+        return canvas;
+    }
+}
@@ -0,0 +1,35 @@
+import java.io.File;
+
+import bench.ProjectWorkload;
+
+/**
+ * Writes and reads a project with an animation, through a temporary file.
+ */
+public class ProjectIOWorkload implements ProjectWorkload {
+    private ProjectIO.Project project;
+    private File file;
+
+    @Override
+    public void setup(int size, int frameCount) throws Exception {
+        project = new ProjectIO.Project();
+        project.cols = size;
+        project.rows = size;
+        project.pixelSize = 16;
+        project.frames = BenchFrames.animation(size, frameCount);
+        project.canvas = project.frames.get(0).data.copy();
+        file = File.createTempFile("bench", ".pam");
+        file.deleteOnExit();
+        ProjectIO.write(file, project);
+    }
+
+    @Override
+    public Object write() throws Exception {
+        ProjectIO.write(file, project);
+        return file;
+    }
+
+    @Override
+    public Object read() throws Exception {
+        return ProjectIO.read(file);
+    }
+}
@@ -0,0 +1,39 @@
+import bench.UndoWorkload;
+
+/**
+ * Records edits of a fixed number of cells into an UndoHistory, like a brush stroke.
+ */
+public class UndoHistoryWorkload implements UndoWorkload {
+    private final UndoHistory history = new UndoHistory();
+    private PixelBuffer grid;
+    private int changedCells;
+    private int edit;
+
+    @Override
+    public void setup(int size, int changedCells) {
+        grid = BenchFrames.sprite(size, size, 42);
+        this.changedCells = Math.min(changedCells, size * size);
+        history.clear();
+        record();
+    }
+
+    @Override
+    public Object record() {
+        history.begin(grid);
+        int[] pixels = grid.getPixels();
+        int color = 0xFF000000 | (++edit * 0x10101);
+        // Spread the stroke over the canvas with a stride coprime to most sizes
+        for (int i = 0, cell = edit; i < changedCells; i++, cell += 7) {
+            pixels[cell % pixels.length] = color;
+        }
+        history.commit(grid);
+        return grid;
+    }
+
+    @Override
+    public Object undoRedo() {
+        grid = history.undo(grid);
+        grid = history.redo(grid);
+        return grid;
+    }
+}
@@ -0,0 +1,59 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The editor canvas: paintComponent with grid lines, renderToImage for PNG export and
+ * loadFromImage for Load PNG.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class CanvasBenchmark {
+    @Param({"32", "128"})
+    public int size;
+
+    @Param({"4", "16"})
+    public int pixelSize;
+
+    @Param({"0", "2"})
+    public int backgroundMode;
+
+    private CanvasWorkload workload;
+
+    @Setup
+    public void setup() {
+        workload = Workloads.load("PixelCanvasWorkload", CanvasWorkload.class);
+        workload.setup(size, pixelSize, backgroundMode);
+    }
+
+    @Benchmark
+    public Object paintComponent() {
+        return workload.paint();
+    }
+
+    @Benchmark
+    public Object renderToImage() {
+        return workload.renderToImage();
+    }
+
+    @Benchmark
+    public Object loadFromImage() {
+        return workload.loadFromImage();
+    }
+}
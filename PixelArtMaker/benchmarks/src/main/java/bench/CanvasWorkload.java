@@ -0,0 +1,16 @@
+package bench;
+
+/**
+ * The editor canvas: painting it, rendering it for export and loading an image into it.
+ */
+public interface CanvasWorkload {
+    void setup(int size, int pixelSize, int backgroundMode);
+
+    /** Paints the whole canvas, grid lines included, into an offscreen image. */
+    Object paint();
+
+    Object renderToImage();
+
+    /** Loads an image of the canvas size as one undoable edit. */
+    Object loadFromImage();
+}
@@ -0,0 +1,47 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A full stroke of each drawing tool, from mouse press through the dragged previews to
+ * the final shape. Tools: 0=pencil, 1=line, 2=rect, 3=oval, 4=triangle, 5=fill rect,
+ * 6=fill oval, 7=bucket fill (fills the whole canvas on every stroke).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class DrawBenchmark {
+    @Param({"64", "256"})
+    public int size;
+
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7"})
+    public int tool;
+
+    private DrawWorkload workload;
+
+    @Setup
+    public void setup() {
+        workload = Workloads.load("PixelCanvasDrawWorkload", DrawWorkload.class);
+        workload.setup(size, tool);
+    }
+
+    @Benchmark
+    public Object stroke() {
+        return workload.stroke();
+    }
+}
@@ -0,0 +1,10 @@
+package bench;
+
+/**
+ * One mouse stroke with a drawing tool: press, a few drags (shape previews) and release.
+ */
+public interface DrawWorkload {
+    void setup(int size, int tool);
+
+    Object stroke();
+}
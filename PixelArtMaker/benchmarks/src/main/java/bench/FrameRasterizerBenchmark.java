@@ -0,0 +1,54 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Frame rendering at export scale: FrameRasterizer against the Graphics2D fillRect loop
+ * it replaced in renderToImage, the exporters and the animation preview.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class FrameRasterizerBenchmark {
+    @Param({"32", "128"})
+    public int size;
+
+    @Param({"1", "10"})
+    public int pixelSize;
+
+    @Param({"0", "2"})
+    public int backgroundMode;
+
+    private RasterWorkload workload;
+
+    @Setup
+    public void setup() {
+        workload = Workloads.load("FrameRasterizerWorkload", RasterWorkload.class);
+        workload.setup(size, pixelSize, backgroundMode);
+    }
+
+    @Benchmark
+    public Object rasterizer() {
+        return workload.renderRasterizer();
+    }
+
+    @Benchmark
+    public Object graphics2D() {
+        return workload.renderGraphics2D();
+    }
+}
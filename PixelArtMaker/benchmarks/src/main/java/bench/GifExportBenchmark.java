@@ -0,0 +1,48 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Animated GIF export of a walking-sprite animation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class GifExportBenchmark {
+    @Param({"32", "128"})
+    public int size;
+
+    @Param({"60"})
+    public int frameCount;
+
+    @Param({"4", "10"})
+    public int pixelSize;
+
+    private GifWorkload workload;
+
+    @Setup
+    public void setup() throws Exception {
+        workload = Workloads.load("GifExporterWorkload", GifWorkload.class);
+        workload.setup(size, frameCount, pixelSize);
+    }
+
+    @Benchmark
+    public Object export() throws Exception {
+        return workload.export();
+    }
+}
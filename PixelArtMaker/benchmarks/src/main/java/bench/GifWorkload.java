@@ -0,0 +1,10 @@
+package bench;
+
+/**
+ * Animated GIF export of a whole animation to a file.
+ */
+public interface GifWorkload {
+    void setup(int size, int frameCount, int pixelSize) throws Exception;
+
+    Object export() throws Exception;
+}
@@ -0,0 +1,50 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Export Project and Import Project: writing and reading a .pam file with an animation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ProjectIOBenchmark {
+    @Param({"64", "256"})
+    public int size;
+
+    @Param({"1", "60"})
+    public int frameCount;
+
+    private ProjectWorkload workload;
+
+    @Setup
+    public void setup() throws Exception {
+        workload = Workloads.load("ProjectIOWorkload", ProjectWorkload.class);
+        workload.setup(size, frameCount);
+    }
+
+    @Benchmark
+    public Object exportAsPAM() throws Exception {
+        return workload.write();
+    }
+
+    @Benchmark
+    public Object importProject() throws Exception {
+        return workload.read();
+    }
+}
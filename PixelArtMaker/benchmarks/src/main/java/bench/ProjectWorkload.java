@@ -0,0 +1,12 @@
+package bench;
+
+/**
+ * Saving and loading a .pam project, as Export Project and Import Project do.
+ */
+public interface ProjectWorkload {
+    void setup(int size, int frameCount) throws Exception;
+
+    Object write() throws Exception;
+
+    Object read() throws Exception;
+}
@@ -0,0 +1,13 @@
+package bench;
+
+/**
+ * Renders one frame at export scale, either through FrameRasterizer or through the old
+ * per-cell Graphics2D fillRect loop.
+ */
+public interface RasterWorkload {
+    void setup(int size, int pixelSize, int backgroundMode);
+
+    Object renderRasterizer();
+
+    Object renderGraphics2D();
+}
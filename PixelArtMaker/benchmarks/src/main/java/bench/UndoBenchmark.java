@@ -0,0 +1,51 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Undo snapshotting: the cost of recording an edit grows with the cells it changed, not
+ * with the canvas size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class UndoBenchmark {
+    @Param({"64", "512"})
+    public int size;
+
+    @Param({"16", "4096"})
+    public int changedCells;
+
+    private UndoWorkload workload;
+
+    @Setup
+    public void setup() {
+        workload = Workloads.load("UndoHistoryWorkload", UndoWorkload.class);
+        workload.setup(size, changedCells);
+    }
+
+    @Benchmark
+    public Object record() {
+        return workload.record();
+    }
+
+    @Benchmark
+    public Object undoRedo() {
+        return workload.undoRedo();
+    }
+}
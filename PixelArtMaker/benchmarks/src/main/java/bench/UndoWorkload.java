@@ -0,0 +1,13 @@
+package bench;
+
+/**
+ * Undo history: recording an edit and stepping back and forth over it.
+ */
+public interface UndoWorkload {
+    void setup(int size, int changedCells);
+
+    /** Records one edit that changes the given number of cells. */
+    Object record();
+
+    Object undoRedo();
+}
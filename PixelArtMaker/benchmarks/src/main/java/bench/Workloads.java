@@ -0,0 +1,18 @@
+package bench;
+
+/**
+ * Loads the benchmark workloads. The application classes live in the default package,
+ * which named packages cannot import, so each workload is a default-package class that
+ * implements one of the interfaces here and is looked up by name.
+ */
+public final class Workloads {
+    private Workloads() {}
+
+    public static <T> T load(String className, Class<T> type) {
+        try {
+            return type.cast(Class.forName(className).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load workload " + className, e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * One frame of an animation: its cells and how long it is shown.
+ * Frame lists such as IndexedFrameList and MappedFrameList hand these out on demand.
+ */
+public class AnimationFrame {
+    PixelBuffer data;
+    int delay; // milliseconds
+
+    AnimationFrame(PixelBuffer frameData, int delay) {
+        this.data = frameData.copy();
+        this.delay = delay;
+    }
+
+    private AnimationFrame(int delay) {
+        this.delay = delay;
+    }
+
+    // Takes the buffer as it is instead of copying it
+    static AnimationFrame wrap(PixelBuffer frameData, int delay) {
+        AnimationFrame af = new AnimationFrame(delay);
+        af.data = frameData;
+        return af;
+    }
+}
@@ -0,0 +1,300 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads animated GIFs and numbered PNG sequences into animation frames.
+ * Frames are decoded on a worker pool through FramePipeline, so only a few decoded images
+ * are held at once however long the animation is. GIF frames are then composited in order
+ * onto the logical screen following each frame's position and disposal method, the way
+ * browsers play them back. Finished frames go straight into an IndexedFrameList, which
+ * stores each as palette indices sharing unchanged tiles with the frame before, so the
+ * result stays compact too.
+ */
+public class AnimationImporter {
+    /** Delay given to frames that carry none: PNG sequences, and GIF frames of 0-10 ms. */
+    public static final int DEFAULT_DELAY_MS = 100;
+
+    private static final String GIF_IMAGE_FORMAT = "javax_imageio_gif_image_1.0";
+    private static final String GIF_STREAM_FORMAT = "javax_imageio_gif_stream_1.0";
+    private static final Pattern NUMBERED = Pattern.compile("(.*?)(\\d+)(\\.png)", Pattern.CASE_INSENSITIVE);
+
+    private int alphaThreshold = ImageImporter.DEFAULT_ALPHA_THRESHOLD;
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    public void setThreads(int threads) { this.threads = Math.max(1, threads); }
+
+    /**
+     * @param alphaThreshold lowest alpha (0-255) that is loaded as an opaque cell
+     */
+    public void setAlphaThreshold(int alphaThreshold) { this.alphaThreshold = alphaThreshold; }
+
+    /**
+     * One decoded GIF image with the placement and timing from its metadata.
+     */
+    private static final class GifFrame {
+        PixelBuffer pixels;
+        int x, y;
+        int delayMs = DEFAULT_DELAY_MS;
+        String disposal = "none";
+    }
+
+    /**
+     * @return number of images in the GIF
+     * @throws IOException if the file is not a readable GIF
+     */
+    public static int countGifFrames(File file) throws IOException {
+        ImageReader reader = openGif(file);
+        try {
+            return reader.getNumImages(true);
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Decodes every frame of an animated GIF, composited to the full logical screen size.
+     * @param file the GIF
+     * @param progress receives a call per finished frame and is polled for cancellation
+     * @return the frames, or null if the import was cancelled
+     * @throws IOException if the file cannot be decoded
+     */
+    public List<AnimationFrame> importGif(File file, ExportProgress progress) throws IOException {
+        ImageReader first = openGif(file);
+        int total;
+        int screenWidth = 0, screenHeight = 0;
+        try {
+            total = first.getNumImages(true);
+            IIOMetadata stream = first.getStreamMetadata();
+            Node screen = stream == null ? null : child(stream.getAsTree(GIF_STREAM_FORMAT), "LogicalScreenDescriptor");
+            if (screen != null) {
+                screenWidth = intAttribute(screen, "logicalScreenWidth", 0);
+                screenHeight = intAttribute(screen, "logicalScreenHeight", 0);
+            }
+            if (screenWidth <= 0 || screenHeight <= 0) {
+                // No usable screen size: fall back to the first frame's
+                screenWidth = first.getWidth(0);
+                screenHeight = first.getHeight(0);
+            }
+        } catch (IOException | RuntimeException e) {
+            close(first);
+            throw e;
+        }
+        if (total <= 0) {
+            close(first);
+            throw new IOException("GIF contains no images");
+        }
+
+        // ImageReaders are not thread-safe: each worker borrows one, and each seeks on its own stream
+        Queue<ImageReader> idle = new ConcurrentLinkedQueue<>();
+        List<ImageReader> all = new ArrayList<>();
+        idle.add(first);
+        all.add(first);
+
+        PixelBuffer screen = new PixelBuffer(screenWidth, screenHeight);
+        IndexedFrameList frames = new IndexedFrameList();
+        try {
+            boolean finished = FramePipeline.run(total, threads, "gif-import",
+                    index -> () -> {
+                        ImageReader reader = idle.poll();
+                        if (reader == null) {
+                            reader = openGif(file);
+                            synchronized (all) { all.add(reader); }
+                        }
+                        try {
+                            return decodeGifFrame(reader, index);
+                        } finally {
+                            idle.add(reader);
+                        }
+                    },
+                    f -> composite(screen, f, frames),
+                    progress);
+            return finished ? frames : null;
+        } finally {
+            synchronized (all) {
+                for (ImageReader reader : all) close(reader);
+            }
+        }
+    }
+
+    private GifFrame decodeGifFrame(ImageReader reader, int index) throws IOException {
+        GifFrame f = new GifFrame();
+        f.pixels = ImageImporter.toPixels(reader.read(index), alphaThreshold);
+        IIOMetadata meta = reader.getImageMetadata(index);
+        Node root = meta.getAsTree(GIF_IMAGE_FORMAT);
+        Node descriptor = child(root, "ImageDescriptor");
+        if (descriptor != null) {
+            f.x = intAttribute(descriptor, "imageLeftPosition", 0);
+            f.y = intAttribute(descriptor, "imageTopPosition", 0);
+        }
+        Node control = child(root, "GraphicControlExtension");
+        if (control != null) {
+            // Delays are in hundredths of a second; like browsers, treat 0 and 1 as unset
+            int centis = intAttribute(control, "delayTime", 0);
+            f.delayMs = centis > 1 ? centis * 10 : DEFAULT_DELAY_MS;
+            String disposal = attribute(control, "disposalMethod");
+            if (disposal != null) f.disposal = disposal;
+        }
+        return f;
+    }
+
+    /**
+     * Draws a frame onto the screen, appends the result to the frames and then applies
+     * the frame's disposal method to prepare the screen for the next frame.
+     */
+    private static void composite(PixelBuffer screen, GifFrame f, IndexedFrameList frames) {
+        int sw = screen.getWidth(), sh = screen.getHeight();
+        int x0 = Math.max(0, f.x), y0 = Math.max(0, f.y);
+        int x1 = Math.min(sw, f.x + f.pixels.getWidth()), y1 = Math.min(sh, f.y + f.pixels.getHeight());
+        int[] dst = screen.getPixels();
+        int[] src = f.pixels.getPixels();
+        int fw = f.pixels.getWidth();
+
+        int[] saved = null;
+        if (f.disposal.equals("restoreToPrevious") && x1 > x0 && y1 > y0) {
+            saved = new int[(x1 - x0) * (y1 - y0)];
+            for (int y = y0; y < y1; y++) System.arraycopy(dst, y * sw + x0, saved, (y - y0) * (x1 - x0), x1 - x0);
+        }
+        for (int y = y0; y < y1; y++) {
+            int s = (y - f.y) * fw + (x0 - f.x);
+            int o = y * sw + x0;
+            for (int x = x0; x < x1; x++, s++, o++) {
+                if (src[s] != PixelBuffer.TRANSPARENT) dst[o] = src[s];
+            }
+        }
+        // Encoded on add, so the screen can be reused right away
+        frames.add(screen, f.delayMs);
+
+        if (f.disposal.equals("restoreToBackgroundColor")) {
+            // Browsers clear to transparent rather than to the background color
+            for (int y = y0; y < y1; y++) Arrays.fill(dst, y * sw + x0, y * sw + x1, PixelBuffer.TRANSPARENT);
+        } else if (saved != null) {
+            for (int y = y0; y < y1; y++) System.arraycopy(saved, (y - y0) * (x1 - x0), dst, y * sw + x0, x1 - x0);
+        }
+    }
+
+    /**
+     * Finds the numbered PNGs that belong with the given one, e.g. every frame_NNNNN.png
+     * next to frame_00003.png, ordered by number.
+     * @param anyFrame one file of the sequence
+     * @return the sequence; just the file itself if it is not numbered
+     */
+    public static List<File> findPngSequence(File anyFrame) {
+        List<File> sequence = new ArrayList<>();
+        Matcher m = NUMBERED.matcher(anyFrame.getName());
+        File dir = anyFrame.getAbsoluteFile().getParentFile();
+        File[] files = dir == null ? null : dir.listFiles();
+        if (!m.matches() || files == null) {
+            sequence.add(anyFrame);
+            return sequence;
+        }
+        String prefix = m.group(1);
+        for (File f : files) {
+            Matcher fm = NUMBERED.matcher(f.getName());
+            if (f.isFile() && fm.matches() && fm.group(1).equals(prefix) && fm.group(2).length() < 19) {
+                sequence.add(f);
+            }
+        }
+        // By number, so frame_9 comes before frame_10 when the numbers are not zero-padded
+        sequence.sort(Comparator.comparingLong(AnimationImporter::frameNumber));
+        return sequence;
+    }
+
+    /**
+     * Decodes a PNG sequence. Every frame gets the size of the first one, cropped or padded
+     * with transparent cells, and the default delay.
+     * @param files the frames in order
+     * @param progress receives a call per finished frame and is polled for cancellation
+     * @return the frames, or null if the import was cancelled
+     * @throws IOException if a file cannot be decoded
+     */
+    public List<AnimationFrame> importPngSequence(List<File> files, ExportProgress progress) throws IOException {
+        if (files.isEmpty()) throw new IOException("No frames to import");
+        IndexedFrameList frames = new IndexedFrameList();
+        int[] size = new int[2];
+        boolean finished = FramePipeline.run(files.size(), threads, "png-import",
+                index -> () -> {
+                    File file = files.get(index);
+                    BufferedImage img = ImageIO.read(file);
+                    if (img == null) throw new IOException("Not a readable image: " + file.getName());
+                    return ImageImporter.toPixels(img, alphaThreshold);
+                },
+                pixels -> {
+                    if (frames.isEmpty()) {
+                        size[0] = pixels.getWidth();
+                        size[1] = pixels.getHeight();
+                    }
+                    PixelBuffer fitted = pixels.getWidth() == size[0] && pixels.getHeight() == size[1]
+                            ? pixels : pixels.resized(size[0], size[1]);
+                    frames.add(fitted, DEFAULT_DELAY_MS);
+                },
+                progress);
+        return finished ? frames : null;
+    }
+
+    private static long frameNumber(File f) {
+        Matcher m = NUMBERED.matcher(f.getName());
+        return m.matches() ? Long.parseLong(m.group(2)) : 0;
+    }
+
+    private static ImageReader openGif(File file) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("gif");
+        if (!readers.hasNext()) throw new IOException("No GIF reader available");
+        ImageInputStream in = ImageIO.createImageInputStream(file);
+        if (in == null) throw new IOException("Cannot open " + file);
+        ImageReader reader = readers.next();
+        reader.setInput(in, false, false);
+        return reader;
+    }
+
+    private static void close(ImageReader reader) {
+        Object input = reader.getInput();
+        reader.dispose();
+        if (input instanceof ImageInputStream) {
+            try {
+                ((ImageInputStream) input).close();
+            } catch (IOException e) {
+                System.out.println("Could not close GIF stream: " + e.getMessage());
+            }
+        }
+    }
+
+    private static Node child(Node parent, String name) {
+        for (Node c = parent.getFirstChild(); c != null; c = c.getNextSibling()) {
+            if (c.getNodeName().equals(name)) return c;
+        }
+        return null;
+    }
+
+    private static String attribute(Node node, String name) {
+        NamedNodeMap attrs = node.getAttributes();
+        Node a = attrs == null ? null : attrs.getNamedItem(name);
+        return a == null ? null : a.getNodeValue();
+    }
+
+    private static int intAttribute(Node node, String name, int fallback) {
+        String value = attribute(node, name);
+        if (value == null) return fallback;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Writes animation frames to an animated PNG (APNG) in pure Java.
+ * The first frame is the PNG's default image; every later frame only covers the cells
+ * that changed since the frame before and replaces that area outright (blend SOURCE), so
+ * pixels turning transparent need no disposal tricks. Building and deflating each frame
+ * runs on a worker pool; the calling thread writes the chunks in order.
+ */
+public class ApngExporter {
+    private static final int APNG_DISPOSE_NONE = 0;
+    private static final int APNG_BLEND_SOURCE = 0;
+
+    private final List<AnimationFrame> frames;
+    private final int pixelSize;
+    private final int backgroundArgb;
+    private final int colorType;
+    private final PngEncoder encoder = new PngEncoder();
+    // Encoders hold scratch buffers, so each worker gets its own copy of the settings
+    private final Queue<PngEncoder> workerEncoders = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<PngEncoder> workerEncoder = ThreadLocal.withInitial(() -> {
+        PngEncoder e = new PngEncoder(encoder);
+        workerEncoders.add(e);
+        return e;
+    });
+    private int loopDelay = 0;
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * @param frames the frames to export
+     * @param pixelSize output pixels per canvas cell
+     * @param backgroundMode 0=white, 1=black, 2=transparent
+     */
+    public ApngExporter(List<AnimationFrame> frames, int pixelSize, int backgroundMode) {
+        this.frames = frames;
+        this.pixelSize = Math.max(1, pixelSize);
+        this.backgroundArgb = FrameRasterizer.backgroundArgb(backgroundMode);
+        this.colorType = backgroundMode == 2 ? PngEncoder.COLOR_RGBA : PngEncoder.COLOR_RGB;
+    }
+
+    public void setThreads(int threads) { this.threads = Math.max(1, threads); }
+
+    /**
+     * @param loopDelay extra milliseconds the last frame stays up before the animation repeats
+     */
+    public void setLoopDelay(int loopDelay) { this.loopDelay = Math.max(0, loopDelay); }
+
+    /**
+     * @return the encoder settings (compression level, filter) used for every frame
+     */
+    public PngEncoder getEncoder() { return encoder; }
+
+    /**
+     * One frame's area and compressed pixels, ready for its fcTL and data chunks.
+     */
+    private static final class EncodedFrame {
+        final int x, y, width, height;
+        final byte[] data;
+
+        EncodedFrame(int x, int y, int width, int height, byte[] data) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Encodes all frames into the file. A cancelled export deletes the partly written file.
+     * @param file destination .png
+     * @param progress receives a call per written frame and is polled for cancellation
+     * @return true if the file was written, false if the export was cancelled
+     * @throws IOException if writing fails
+     */
+    public boolean export(File file, ExportProgress progress) throws IOException {
+        int total = frames.size();
+        if (total == 0) throw new IOException("No animation frames to export");
+        PixelBuffer first = frames.get(0).data;
+        int cols = first.getWidth(), rows = first.getHeight();
+
+        boolean finished = false;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            out.write(PngEncoder.SIGNATURE);
+            PngEncoder.writeChunk(out, "IHDR", PngEncoder.header(cols * pixelSize, rows * pixelSize, 8, colorType));
+            byte[] actl = new byte[8];
+            PngEncoder.putInt(actl, 0, total);
+            PngEncoder.putInt(actl, 4, 0); // loop forever
+            PngEncoder.writeChunk(out, "acTL", actl);
+
+            int[] sequence = {0};
+            int[] written = {0};
+            finished = FramePipeline.run(total, threads, "apng-export",
+                    index -> () -> encodeFrame(index, cols, rows),
+                    f -> writeFrame(out, f, frameDelay(written[0]++), sequence),
+                    progress);
+            if (finished) PngEncoder.writeChunk(out, "IEND", new byte[0]);
+        } finally {
+            // The workers have stopped, so their encoders can be released
+            for (PngEncoder e : workerEncoders) e.end();
+            workerEncoders.clear();
+            if (!finished) file.delete();
+        }
+        return finished;
+    }
+
+    private void writeFrame(OutputStream out, EncodedFrame f, int delayMs, int[] sequence) throws IOException {
+        byte[] fctl = new byte[26];
+        boolean isDefaultImage = sequence[0] == 0;
+        PngEncoder.putInt(fctl, 0, sequence[0]++);
+        PngEncoder.putInt(fctl, 4, f.width * pixelSize);
+        PngEncoder.putInt(fctl, 8, f.height * pixelSize);
+        PngEncoder.putInt(fctl, 12, f.x * pixelSize);
+        PngEncoder.putInt(fctl, 16, f.y * pixelSize);
+        PngEncoder.putShort(fctl, 20, Math.min(0xFFFF, delayMs));
+        PngEncoder.putShort(fctl, 22, 1000);
+        fctl[24] = APNG_DISPOSE_NONE;
+        fctl[25] = APNG_BLEND_SOURCE;
+        PngEncoder.writeChunk(out, "fcTL", fctl);
+
+        if (isDefaultImage) {
+            PngEncoder.writeChunk(out, "IDAT", f.data);
+        } else {
+            byte[] fdat = new byte[4 + f.data.length];
+            PngEncoder.putInt(fdat, 0, sequence[0]++);
+            System.arraycopy(f.data, 0, fdat, 4, f.data.length);
+            PngEncoder.writeChunk(out, "fdAT", fdat);
+        }
+    }
+
+    /**
+     * Finds the cells that changed since the previous frame and compresses that area.
+     * Frame 0 always covers the whole image.
+     */
+    EncodedFrame encodeFrame(int index, int cols, int rows) {
+        PixelBuffer cur = frames.get(index).data;
+        int minX = 0, minY = 0, maxX = cols - 1, maxY = rows - 1;
+        if (index > 0) {
+            PixelBuffer prev = frames.get(index - 1).data;
+            minX = cols;
+            minY = rows;
+            maxX = -1;
+            maxY = -1;
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < cols; x++) {
+                    if (valueAt(cur, x, y) != valueAt(prev, x, y)) {
+                        if (x < minX) minX = x;
+                        if (x > maxX) maxX = x;
+                        if (y < minY) minY = y;
+                        if (y > maxY) maxY = y;
+                    }
+                }
+            }
+            if (maxX < 0) {
+                // Unchanged frame; APNG still needs a region, so rewrite one cell
+                minX = minY = maxX = maxY = 0;
+            }
+        }
+        final int x0 = minX, y0 = minY, w = maxX - minX + 1, h = maxY - minY + 1;
+        int bpp = colorType == PngEncoder.COLOR_RGBA ? 4 : 3;
+        byte[] data = workerEncoder.get().compress(w * pixelSize, h * pixelSize, colorType, (y, row) -> {
+            int cy = y0 + y / pixelSize;
+            int o = 0;
+            for (int cx = x0; cx < x0 + w; cx++) {
+                int argb = valueAt(cur, cx, cy);
+                for (int k = 0; k < pixelSize; k++) {
+                    row[o] = (byte) (argb >> 16);
+                    row[o + 1] = (byte) (argb >> 8);
+                    row[o + 2] = (byte) argb;
+                    if (bpp == 4) row[o + 3] = (byte) (argb >>> 24);
+                    o += bpp;
+                }
+            }
+        });
+        return new EncodedFrame(x0, y0, w, h, data);
+    }
+
+    /**
+     * @return the cell's color with the background applied; cells outside a smaller frame count as background
+     */
+    private int valueAt(PixelBuffer data, int x, int y) {
+        if (x >= data.getWidth() || y >= data.getHeight()) return backgroundArgb;
+        int argb = data.get(x, y);
+        return argb == PixelBuffer.TRANSPARENT ? backgroundArgb : argb;
+    }
+
+    /**
+     * @return display time of a frame, matching the editor's playback: 100 ms when unset,
+     *         and the loop delay added to the last frame
+     */
+    private int frameDelay(int index) {
+        int delay = frames.get(index).delay;
+        if (delay <= 0) delay = 100;
+        if (index == frames.size() - 1) delay += loopDelay;
+        return delay;
+    }
+}
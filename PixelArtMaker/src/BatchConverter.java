@@ -0,0 +1,271 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Command-line converter for .pam projects, for build servers and scripts.
+ * Runs without a window: projects are read with ProjectIO, the canvas is rendered with
+ * FrameRasterizer (the same code behind PixelCanvas.renderToImage) and animations go
+ * through the regular exporters. Directories are converted file by file on a worker pool.
+ * Started by PixelArtMaker.main when it gets arguments, or directly as BatchConverter.
+ */
+public final class BatchConverter {
+    private static final String USAGE =
+            "Usage: java -jar PixelArtMaker.jar [options] <project.pam | directory>...\n"
+            + "Options:\n"
+            + "  -f, --format FORMAT     png, jpg, gif, apng or frames (PNG sequence); default png\n"
+            + "  -s, --scale N           output pixels per cell; default is the project's pixel size\n"
+            + "  -b, --background MODE   white, black or transparent; default is the project's background\n"
+            + "  -o, --output DIR        output directory; default is next to each project\n"
+            + "  -j, --threads N         projects converted in parallel; default is the number of CPUs\n"
+            + "  -h, --help              show this help\n"
+            + "png and jpg render the canvas; gif, apng and frames export the animation frames.";
+
+    private String format = "png";
+    private int scale = 0;             // 0 = use the project's pixel size
+    private int backgroundMode = -1;   // -1 = use the project's background
+    private File outputDir;
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private final List<File> inputs = new ArrayList<>();
+
+    private BatchConverter() {}
+
+    /**
+     * Result line for one project.
+     */
+    private static final class Outcome {
+        final boolean ok;
+        final String message;
+
+        Outcome(boolean ok, String message) {
+            this.ok = ok;
+            this.message = message;
+        }
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Parses the arguments and converts every project they name.
+     * @param args command-line arguments
+     * @return process exit code: 0 on success, 1 if any conversion failed, 2 for bad usage
+     */
+    public static int run(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        BatchConverter converter = new BatchConverter();
+        try {
+            if (!converter.parse(args)) {
+                System.out.println(USAGE);
+                return 0;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+        return converter.convertAll();
+    }
+
+    /**
+     * @return false when help was requested
+     */
+    private boolean parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h":
+                case "--help":
+                    return false;
+                case "-f":
+                case "--format":
+                    format = value(args, ++i, arg).toLowerCase(Locale.ROOT);
+                    if (!Arrays.asList("png", "jpg", "jpeg", "gif", "apng", "frames").contains(format)) {
+                        throw new IllegalArgumentException("Unknown format: " + format);
+                    }
+                    if (format.equals("jpeg")) format = "jpg";
+                    break;
+                case "-s":
+                case "--scale":
+                    scale = positive(value(args, ++i, arg), arg);
+                    break;
+                case "-b":
+                case "--background":
+                    String mode = value(args, ++i, arg).toLowerCase(Locale.ROOT);
+                    backgroundMode = Arrays.asList("white", "black", "transparent").indexOf(mode);
+                    if (backgroundMode < 0) throw new IllegalArgumentException("Unknown background: " + mode);
+                    break;
+                case "-o":
+                case "--output":
+                    outputDir = new File(value(args, ++i, arg));
+                    break;
+                case "-j":
+                case "--threads":
+                    threads = positive(value(args, ++i, arg), arg);
+                    break;
+                default:
+                    if (arg.startsWith("-")) throw new IllegalArgumentException("Unknown option: " + arg);
+                    addInput(new File(arg));
+            }
+        }
+        if (inputs.isEmpty()) throw new IllegalArgumentException("No .pam projects given");
+        return true;
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException("Missing value for " + option);
+        return args[i];
+    }
+
+    private static int positive(String value, String option) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) return n;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(option + " needs a positive number, got " + value);
+    }
+
+    private void addInput(File f) {
+        if (f.isDirectory()) {
+            File[] projects = f.listFiles((dir, name) -> name.toLowerCase(Locale.ROOT).endsWith(".pam"));
+            if (projects == null || projects.length == 0) {
+                throw new IllegalArgumentException("No .pam projects in " + f);
+            }
+            Arrays.sort(projects);
+            Collections.addAll(inputs, projects);
+        } else if (f.isFile()) {
+            inputs.add(f);
+        } else {
+            throw new IllegalArgumentException("No such file: " + f);
+        }
+    }
+
+    /**
+     * Converts the inputs on the worker pool and prints one line per project in input order.
+     * @return 0 if every project converted, 1 otherwise
+     */
+    private int convertAll() {
+        if (outputDir != null && !outputDir.isDirectory() && !outputDir.mkdirs()) {
+            System.err.println("Cannot create directory " + outputDir);
+            return 1;
+        }
+        int workers = Math.min(threads, inputs.size());
+        // With several projects in flight, each exporter keeps to its own thread
+        int exportThreads = workers > 1 ? 1 : threads;
+        int[] failed = {0};
+        try {
+            FramePipeline.run(inputs.size(), workers, "batch-convert",
+                    index -> () -> convert(inputs.get(index), exportThreads),
+                    outcome -> {
+                        if (outcome.ok) {
+                            System.out.println(outcome.message);
+                        } else {
+                            failed[0]++;
+                            System.err.println(outcome.message);
+                        }
+                    },
+                    ExportProgress.NONE);
+        } catch (IOException e) {
+            System.err.println("error: " + e.getMessage());
+            return 1;
+        }
+        return failed[0] == 0 ? 0 : 1;
+    }
+
+    /**
+     * Converts one project. Failures are reported in the outcome rather than thrown,
+     * so one bad file does not stop the batch.
+     */
+    private Outcome convert(File input, int exportThreads) {
+        long start = System.nanoTime();
+        try {
+            ProjectIO.Project p = ProjectIO.read(input);
+            int pixelSize = scale > 0 ? scale : Math.max(1, p.pixelSize);
+            int background = backgroundMode >= 0 ? backgroundMode : p.backgroundMode;
+            List<AnimationFrame> frames = p.frames;
+            if (frames == null || frames.isEmpty()) {
+                // Legacy text projects have no animation; export the canvas as the only frame
+                frames = Collections.singletonList(new AnimationFrame(p.canvas, 100));
+            }
+
+            File output = outputFor(input);
+            switch (format) {
+                case "png":
+                    writePng(p.canvas, pixelSize, background, output);
+                    break;
+                case "jpg":
+                    writeJpg(p.canvas, pixelSize, background, output);
+                    break;
+                case "gif": {
+                    GifExporter exporter = new GifExporter(frames, pixelSize, background);
+                    exporter.setLoopDelay(p.loopDelay);
+                    exporter.setThreads(exportThreads);
+                    exporter.export(output, ExportProgress.NONE);
+                    break;
+                }
+                case "apng": {
+                    ApngExporter exporter = new ApngExporter(frames, pixelSize, background);
+                    exporter.setLoopDelay(p.loopDelay);
+                    exporter.setThreads(exportThreads);
+                    exporter.export(output, ExportProgress.NONE);
+                    break;
+                }
+                case "frames": {
+                    PngSequenceExporter exporter = new PngSequenceExporter(frames, pixelSize, background);
+                    exporter.setThreads(exportThreads);
+                    exporter.export(output, ExportProgress.NONE);
+                    break;
+                }
+            }
+            return new Outcome(true, input + " -> " + output + " (" + (System.nanoTime() - start) / 1000000 + " ms)");
+        } catch (IOException | RuntimeException e) {
+            return new Outcome(false, "error: " + input + ": " + e.getMessage());
+        }
+    }
+
+    private File outputFor(File input) {
+        String name = input.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        File dir = outputDir != null ? outputDir : input.getAbsoluteFile().getParentFile();
+        switch (format) {
+            case "frames": return new File(dir, base + "_frames");
+            case "apng": return new File(dir, base + ".apng");
+            default: return new File(dir, base + "." + format);
+        }
+    }
+
+    private static void writePng(PixelBuffer canvas, int pixelSize, int backgroundMode, File output) throws IOException {
+        int width = canvas.getWidth() * pixelSize, height = canvas.getHeight() * pixelSize;
+        int[] pixels = new int[width * height];
+        FrameRasterizer.render(canvas, pixelSize, FrameRasterizer.backgroundArgb(backgroundMode), pixels, 0, width);
+        PngEncoder encoder = new PngEncoder();
+        encoder.setIndexed(true);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output), 1 << 16)) {
+            encoder.write(out, pixels, width, height, backgroundMode == 2);
+        } finally {
+            encoder.end();
+        }
+    }
+
+    private static void writeJpg(PixelBuffer canvas, int pixelSize, int backgroundMode, File output) throws IOException {
+        // JPEG has no alpha: render into an RGB image, with white behind transparent cells
+        BufferedImage img = new BufferedImage(canvas.getWidth() * pixelSize, canvas.getHeight() * pixelSize,
+                BufferedImage.TYPE_INT_RGB);
+        int background = FrameRasterizer.backgroundArgb(backgroundMode == 2 ? 0 : backgroundMode);
+        FrameRasterizer.render(canvas, pixelSize, background, FrameRasterizer.pixels(img), 0, img.getWidth());
+        if (!ImageIO.write(img, "jpg", output)) throw new IOException("No JPEG writer available");
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Ordered table of distinct ARGB colors with constant-time color-to-index lookup.
+ * Lookups use an open-addressing int table, so mapping every pixel of a frame to its
+ * palette index does not box or allocate.
+ */
+public class ColorPalette {
+    private int[] colors = new int[16];
+    private int size = 0;
+
+    // Hash table: keys hold colors, slots hold index + 1 (0 marks an empty slot)
+    private int[] keys = new int[32];
+    private int[] slots = new int[32];
+
+    public int size() { return size; }
+
+    public int get(int index) { return colors[index]; }
+
+    /**
+     * @param argb packed color
+     * @return the palette index of the color, or -1 if it is not in the palette
+     */
+    public int indexOf(int argb) {
+        int mask = keys.length - 1;
+        int i = hash(argb) & mask;
+        while (slots[i] != 0) {
+            if (keys[i] == argb) return slots[i] - 1;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of a color, appending it to the palette first if needed.
+     * @param argb packed color
+     * @return the palette index
+     */
+    public int add(int argb) {
+        int mask = keys.length - 1;
+        int i = hash(argb) & mask;
+        while (slots[i] != 0) {
+            if (keys[i] == argb) return slots[i] - 1;
+            i = (i + 1) & mask;
+        }
+        if (size == colors.length) colors = java.util.Arrays.copyOf(colors, size * 2);
+        int index = size++;
+        colors[index] = argb;
+        keys[i] = argb;
+        slots[i] = index + 1;
+        if (size * 2 > keys.length) rehash(keys.length * 2);
+        return index;
+    }
+
+    /**
+     * Replaces the color at an index, e.g. to recolor every pixel that refers to it.
+     * If another index already holds the new color, both stay in the palette and lookups
+     * return the lower index.
+     * @param index palette index
+     * @param argb new packed color
+     */
+    public void set(int index, int argb) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Palette index " + index);
+        colors[index] = argb;
+        rehash(keys.length);
+    }
+
+    /**
+     * Empties the palette, keeping its tables for reuse.
+     */
+    public void clear() {
+        size = 0;
+        java.util.Arrays.fill(slots, 0);
+    }
+
+    /**
+     * @return an independent palette with the same colors at the same indices
+     */
+    public ColorPalette copy() {
+        ColorPalette p = new ColorPalette();
+        p.colors = colors.clone();
+        p.size = size;
+        p.keys = keys.clone();
+        p.slots = slots.clone();
+        return p;
+    }
+
+    /**
+     * @return a copy of the colors in index order
+     */
+    public int[] toArray() { return java.util.Arrays.copyOf(colors, size); }
+
+    private void rehash(int capacity) {
+        keys = new int[capacity];
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int index = 0; index < size; index++) {
+            int i = hash(colors[index]) & mask;
+            while (slots[i] != 0) i = (i + 1) & mask;
+            keys[i] = colors[index];
+            slots[i] = index + 1;
+        }
+    }
+
+    private static int hash(int argb) {
+        int h = argb * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * Callback for long-running exports. Implementations may be called from a worker thread.
+ */
+public interface ExportProgress {
+    /** Progress sink for callers that do not track or cancel exports. */
+    ExportProgress NONE = new ExportProgress() {
+        @Override public void frameDone(int done, int total) {}
+        @Override public boolean isCancelled() { return false; }
+    };
+
+    /**
+     * Called after each frame has been written.
+     * @param done number of frames finished so far
+     * @param total number of frames in the export
+     */
+    void frameDone(int done, int total);
+
+    /**
+     * @return true if the export should stop as soon as possible
+     */
+    boolean isCancelled();
+}
@@ -0,0 +1,252 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes animation frames to a video by piping raw RGB frames into ffmpeg's stdin.
+ * Frames never touch the disk: the exporting thread writes each frame as rgb24 bytes
+ * while a second thread drains ffmpeg's console output so the process cannot stall on
+ * a full pipe. Per-frame delays are kept by placing frames on a fixed frame-rate
+ * timeline and repeating each one for as many ticks as its delay covers.
+ */
+public class FfmpegExporter {
+    public static final int DEFAULT_MAX_FPS = 60;
+
+    // Keep only the end of ffmpeg's output for error messages
+    private static final int OUTPUT_TAIL_CHARS = 4000;
+
+    private final List<AnimationFrame> frames;
+    private final int pixelSize;
+    private final int backgroundArgb;
+    private String executable = "ffmpeg";
+    private int loopDelay = 0;
+    private int maxFps = DEFAULT_MAX_FPS;
+
+    /**
+     * @param frames the frames to export
+     * @param pixelSize output pixels per canvas cell
+     * @param backgroundMode 0=white, 1=black, 2=transparent (video has no alpha, so white)
+     */
+    public FfmpegExporter(List<AnimationFrame> frames, int pixelSize, int backgroundMode) {
+        this.frames = frames;
+        this.pixelSize = Math.max(1, pixelSize);
+        this.backgroundArgb = FrameRasterizer.backgroundArgb(backgroundMode == 1 ? 1 : 0);
+    }
+
+    /**
+     * @param executable ffmpeg command or path; any program taking the same arguments will do
+     */
+    public void setExecutable(String executable) { this.executable = executable; }
+
+    /**
+     * @param loopDelay extra milliseconds the last frame stays up
+     */
+    public void setLoopDelay(int loopDelay) { this.loopDelay = Math.max(0, loopDelay); }
+
+    /**
+     * @param maxFps highest frame rate used for the timeline
+     */
+    public void setMaxFps(int maxFps) { this.maxFps = Math.max(1, maxFps); }
+
+    /**
+     * Checks that the executable runs and reports itself as ffmpeg.
+     * @param executable ffmpeg command or path
+     * @return true if "executable -version" answers like ffmpeg
+     */
+    public static boolean isAvailable(String executable) {
+        try {
+            ProcessBuilder pb = new ProcessBuilder(executable, "-version");
+            pb.redirectErrorStream(true);
+            Process p = pb.start();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
+            String line = reader.readLine();
+            while (reader.readLine() != null) {
+                // drain so the process can exit
+            }
+            p.waitFor();
+            return line != null && line.toLowerCase().contains("ffmpeg");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Encodes the frames into the output file with libx264.
+     * @param output destination video file
+     * @param progress receives a call per source frame and is polled for cancellation
+     * @return true if the video was written, false if the export was cancelled
+     * @throws IOException if ffmpeg cannot be started or fails
+     */
+    public boolean export(File output, ExportProgress progress) throws IOException {
+        int total = frames.size();
+        if (total == 0) throw new IOException("No animation frames to export");
+        PixelBuffer first = frames.get(0).data;
+        int cols = first.getWidth(), rows = first.getHeight();
+        int width = cols * pixelSize, height = rows * pixelSize;
+
+        int[] delays = new int[total];
+        for (int i = 0; i < total; i++) {
+            int delay = frames.get(i).delay;
+            delays[i] = (delay > 0 ? delay : 100) + (i == total - 1 ? loopDelay : 0);
+        }
+        int tickMs = timelineTick(delays);
+
+        Process process = new ProcessBuilder(buildCommand(width, height, "1000/" + tickMs, output))
+                .redirectErrorStream(true)
+                .start();
+        StringBuilder console = new StringBuilder();
+        Thread drain = new Thread(() -> drainOutput(process.getInputStream(), console), "ffmpeg-output");
+        drain.setDaemon(true);
+        drain.start();
+
+        boolean finished = false;
+        boolean cancelled = false;
+        try (OutputStream stdin = new BufferedOutputStream(process.getOutputStream(), 1 << 16)) {
+            int[] argb = new int[width * height];
+            byte[] rgb = new byte[width * height * 3];
+            long elapsedMs = 0;
+            long ticksWritten = 0;
+            for (int i = 0; i < total; i++) {
+                if (progress.isCancelled()) {
+                    cancelled = true;
+                    break;
+                }
+                elapsedMs += delays[i];
+                // Round the frame's end time to whole ticks so the total length does not drift
+                long ticksEnd = Math.round(elapsedMs / (double) tickMs);
+                if (ticksEnd > ticksWritten) {
+                    renderRgb(frames.get(i).data, cols, rows, argb, rgb);
+                    for (; ticksWritten < ticksEnd; ticksWritten++) {
+                        stdin.write(rgb);
+                    }
+                }
+                progress.frameDone(i + 1, total);
+            }
+            finished = !cancelled;
+        } catch (IOException e) {
+            finished = false;
+            if (cancelled) return false;
+            // ffmpeg closed its input early; its own output says why
+            int code = waitFor(process, drain);
+            throw new IOException("FFmpeg stopped reading frames (exit code " + code + ").\n" + tail(console), e);
+        } finally {
+            if (!finished) {
+                process.destroy();
+                output.delete();
+            }
+        }
+        if (cancelled) return false;
+
+        int code = waitFor(process, drain);
+        if (code != 0) {
+            output.delete();
+            throw new IOException("FFmpeg failed with exit code " + code + ".\n" + tail(console));
+        }
+        return true;
+    }
+
+    /**
+     * Chooses the timeline step: the largest step that every delay is a multiple of, as
+     * long as that stays within maxFps; otherwise the maxFps step with rounded durations.
+     * @return milliseconds per output frame
+     */
+    int timelineTick(int[] delays) {
+        int gcd = 0;
+        for (int d : delays) gcd = gcd(gcd, d);
+        int minTick = (int) Math.ceil(1000.0 / maxFps);
+        return gcd >= minTick ? gcd : minTick;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private List<String> buildCommand(int width, int height, String frameRate, File output) {
+        List<String> command = new ArrayList<>();
+        command.add(executable);
+        command.add("-y"); // Overwrite output
+        command.add("-f");
+        command.add("rawvideo");
+        command.add("-pix_fmt");
+        command.add("rgb24");
+        command.add("-s");
+        command.add(width + "x" + height);
+        command.add("-framerate");
+        command.add(frameRate);
+        command.add("-i");
+        command.add("-");
+        // yuv420p needs even dimensions
+        command.add("-vf");
+        command.add("pad=ceil(iw/2)*2:ceil(ih/2)*2");
+        command.add("-c:v");
+        command.add("libx264");
+        command.add("-pix_fmt");
+        command.add("yuv420p");
+        command.add(output.getAbsolutePath());
+        return command;
+    }
+
+    /**
+     * Writes a frame at export scale as packed rgb24, reusing the output array.
+     */
+    private void renderRgb(PixelBuffer data, int cols, int rows, int[] argb, byte[] rgb) {
+        int w = Math.min(cols, data.getWidth()), h = Math.min(rows, data.getHeight());
+        // Cells outside a smaller frame show the background
+        if (w < cols || h < rows) Arrays.fill(argb, backgroundArgb);
+        FrameRasterizer.render(data, 0, 0, w, h, pixelSize, backgroundArgb, argb, 0, cols * pixelSize);
+        for (int i = 0, o = 0; i < argb.length; i++) {
+            int c = argb[i];
+            rgb[o++] = (byte) (c >> 16);
+            rgb[o++] = (byte) (c >> 8);
+            rgb[o++] = (byte) c;
+        }
+    }
+
+    private static void drainOutput(InputStream in, StringBuilder console) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, Charset.defaultCharset()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                synchronized (console) {
+                    console.append(line).append('\n');
+                    if (console.length() > 2 * OUTPUT_TAIL_CHARS) {
+                        console.delete(0, console.length() - OUTPUT_TAIL_CHARS);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Process went away; whatever was read is kept
+        }
+    }
+
+    private static int waitFor(Process process, Thread drain) throws IOException {
+        try {
+            int code = process.waitFor();
+            drain.join(2000);
+            return code;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            throw new IOException("Interrupted while waiting for FFmpeg", e);
+        }
+    }
+
+    private static String tail(StringBuilder console) {
+        synchronized (console) {
+            int start = Math.max(0, console.length() - OUTPUT_TAIL_CHARS);
+            return console.substring(start);
+        }
+    }
+}
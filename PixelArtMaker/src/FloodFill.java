@@ -0,0 +1,114 @@
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Bucket fill over a PixelBuffer using horizontal spans.
+ * A span is filled as soon as it is found and pushed as (left, right, row) onto a plain int
+ * stack, then the rows above and below it are scanned for more; there is no recursion, so a
+ * 512x512 region cannot overflow the thread stack. A bit per cell records what has been
+ * filled, so every cell is filled once even when the new color still matches the old one
+ * within the tolerance. The stack and the bit mask are kept between fills and only grow,
+ * so once warmed up a fill allocates nothing. Not thread-safe; use one per canvas.
+ */
+public class FloodFill {
+    private int[] stack = new int[3 * 256];
+    private int sp;
+    private long[] filled = new long[0];
+
+    // State of the fill in progress
+    private int[] pixels;
+    private int width;
+    private int target, replacement, tolerance;
+    private int minX, minY, maxX, maxY;
+    private int count;
+
+    /**
+     * Fills the region connected to (x, y) whose colors are within tolerance of the color at (x, y).
+     * @param buffer the cells to fill, changed in place
+     * @param x start column
+     * @param y start row
+     * @param argb the fill color
+     * @param tolerance largest difference (0-255) in any ARGB channel still counted as the same color
+     * @param eightConnected true to also spread through diagonal neighbours
+     * @param bounds set to the cells that changed; may be null
+     * @return number of cells filled
+     */
+    public int fill(PixelBuffer buffer, int x, int y, int argb, int tolerance, boolean eightConnected, Rectangle bounds) {
+        if (bounds != null) bounds.setBounds(0, 0, 0, 0);
+        int w = buffer.getWidth(), h = buffer.getHeight();
+        if (x < 0 || y < 0 || x >= w || y >= h) return 0;
+        this.pixels = buffer.getPixels();
+        this.width = w;
+        this.target = pixels[y * w + x];
+        this.replacement = argb;
+        this.tolerance = Math.max(0, Math.min(255, tolerance));
+        if (this.tolerance == 0 && target == argb) return 0; // Nothing would change
+
+        int words = (w * h + 63) >>> 6;
+        if (filled.length < words) filled = new long[words];
+        else Arrays.fill(filled, 0, words, 0L);
+        minX = minY = Integer.MAX_VALUE;
+        maxX = maxY = -1;
+        count = 0;
+        sp = 0;
+
+        int reach = eightConnected ? 1 : 0;
+        fillSpan(x, y);
+        while (sp > 0) {
+            int row = stack[--sp];
+            int right = stack[--sp];
+            int left = stack[--sp];
+            int from = Math.max(0, left - reach), to = Math.min(w - 1, right + reach);
+            if (row > 0) scanRow(from, to, row - 1);
+            if (row < h - 1) scanRow(from, to, row + 1);
+        }
+
+        if (bounds != null && count > 0) bounds.setBounds(minX, minY, maxX - minX + 1, maxY - minY + 1);
+        pixels = null; // Don't hold on to the buffer
+        return count;
+    }
+
+    // Fills every unfilled matching span that overlaps columns from..to of a row
+    private void scanRow(int from, int to, int row) {
+        int base = row * width;
+        for (int x = from; x <= to; x++) {
+            if (matches(base + x)) x = fillSpan(x, row);
+        }
+    }
+
+    /**
+     * Fills the span through (x, row), pushes it and returns its last column.
+     */
+    private int fillSpan(int x, int row) {
+        int base = row * width;
+        int left = x, right = x;
+        while (left > 0 && matches(base + left - 1)) left--;
+        while (right < width - 1 && matches(base + right + 1)) right++;
+        for (int i = base + left; i <= base + right; i++) {
+            pixels[i] = replacement;
+            filled[i >>> 6] |= 1L << i;
+        }
+        count += right - left + 1;
+        if (left < minX) minX = left;
+        if (right > maxX) maxX = right;
+        if (row < minY) minY = row;
+        if (row > maxY) maxY = row;
+
+        if (sp + 3 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+        stack[sp++] = left;
+        stack[sp++] = right;
+        stack[sp++] = row;
+        return right;
+    }
+
+    private boolean matches(int i) {
+        if ((filled[i >>> 6] & (1L << i)) != 0) return false;
+        int c = pixels[i];
+        if (c == target) return true;
+        if (tolerance == 0) return false;
+        return Math.abs((c >>> 24) - (target >>> 24)) <= tolerance
+                && Math.abs(((c >> 16) & 0xFF) - ((target >> 16) & 0xFF)) <= tolerance
+                && Math.abs(((c >> 8) & 0xFF) - ((target >> 8) & 0xFF)) <= tolerance
+                && Math.abs((c & 0xFF) - (target & 0xFF)) <= tolerance;
+    }
+}
@@ -0,0 +1,96 @@
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache of frames rendered at one pixel size, bounded by the memory the images take.
+ * Images are keyed by IndexedFrameList.versionKey, so a frame is rendered once and only
+ * rendered again after it has been edited; showing a cached frame is a single drawImage.
+ * The images are plain TYPE_INT_ARGB BufferedImages, which Java2D keeps accelerated copies
+ * of by itself once they are drawn a few times.
+ */
+public class FrameImageCache {
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private final int pixelSize;
+    private final int background;
+    private final long maxBytes;
+    private final Map<Object, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits, misses;
+
+    /**
+     * @param pixelSize output pixels per cell
+     * @param background ARGB value for transparent cells
+     * @param maxBytes memory the cached images may take; the newest image is always kept
+     */
+    public FrameImageCache(int pixelSize, int background, long maxBytes) {
+        this.pixelSize = pixelSize;
+        this.background = background;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the rendered image of a frame, rendering it on a miss. Safe to call from
+     * several threads; the image must not be modified.
+     * @param frames the frame list
+     * @param index frame to render
+     */
+    public BufferedImage get(List<AnimationFrame> frames, int index) {
+        // Take the key before the pixels: if the frame is replaced in between, the new
+        // pixels end up under the old key, which is never asked for again
+        Object key = IndexedFrameList.versionKey(frames, index);
+        synchronized (this) {
+            BufferedImage img = images.get(key);
+            if (img != null) {
+                hits++;
+                return img;
+            }
+            misses++;
+        }
+        BufferedImage img = FrameRasterizer.renderImage(frames.get(index).data, pixelSize, background, null);
+        put(key, img);
+        return img;
+    }
+
+    /**
+     * @return true if the cache already holds the frame's image
+     */
+    public synchronized boolean contains(List<AnimationFrame> frames, int index) {
+        return images.containsKey(IndexedFrameList.versionKey(frames, index));
+    }
+
+    /**
+     * @param imageBytes size of one more image
+     * @return true if an image that size fits without evicting anything
+     */
+    public synchronized boolean hasRoomFor(long imageBytes) {
+        return bytes + imageBytes <= maxBytes;
+    }
+
+    public synchronized long getBytes() { return bytes; }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+
+    public synchronized void clear() {
+        images.clear();
+        bytes = 0;
+    }
+
+    private synchronized void put(Object key, BufferedImage img) {
+        BufferedImage old = images.put(key, img);
+        if (old != null) bytes -= sizeOf(old);
+        bytes += sizeOf(img);
+        Iterator<BufferedImage> eldest = images.values().iterator();
+        while (bytes > maxBytes && images.size() > 1) {
+            bytes -= sizeOf(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    private static long sizeOf(BufferedImage img) {
+        return 4L * img.getWidth() * img.getHeight();
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ordered producer/consumer loop shared by the animation exporters.
+ * Per-frame work runs on a fixed pool of daemon threads while the calling thread hands
+ * the results to a sink strictly in frame order. At most two frames per worker are in
+ * flight, so memory stays bounded however long the animation is. run() only returns once
+ * every worker has stopped, so callers can clean up after a failed or cancelled export.
+ */
+public final class FramePipeline {
+    private FramePipeline() {}
+
+    public interface Task<T> {
+        /**
+         * Called on the exporting thread in frame order; returns the work for the pool.
+         * @param index frame index
+         * @return the job producing the frame's result
+         * @throws IOException if the frame cannot be prepared
+         */
+        Callable<T> prepare(int index) throws IOException;
+    }
+
+    public interface Sink<T> {
+        void write(T frame) throws IOException;
+    }
+
+    /**
+     * Runs the task for frames 0..total-1 and passes the results to the sink in order.
+     * @param total number of frames
+     * @param threads worker thread count
+     * @param threadName name for the worker threads
+     * @param task per-frame work
+     * @param sink receives results in frame order on the calling thread
+     * @param progress receives a call per frame written and is polled for cancellation
+     * @return true if all frames were written, false if the export was cancelled
+     * @throws IOException if a frame fails or the sink fails
+     */
+    public static <T> boolean run(int total, int threads, String threadName, Task<T> task, Sink<T> sink,
+                                  ExportProgress progress) throws IOException {
+        int workers = Math.max(1, threads);
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        });
+        ArrayDeque<Future<T>> pending = new ArrayDeque<>();
+        int window = workers * 2;
+        try {
+            int submitted = 0;
+            for (int i = 0; i < total; i++) {
+                while (submitted < total && submitted < i + window) {
+                    pending.addLast(pool.submit(task.prepare(submitted++)));
+                }
+                if (progress.isCancelled()) return false;
+                sink.write(pending.removeFirst().get());
+                progress.frameDone(i + 1, total);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("Frame rendering failed: " + cause, cause);
+        } finally {
+            for (Future<T> f : pending) f.cancel(true);
+            pool.shutdownNow();
+            awaitTermination(pool);
+        }
+    }
+
+    // Waits for frames already being worked on; an interrupt is kept for the caller
+    private static void awaitTermination(ExecutorService pool) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (pool.awaitTermination(1, TimeUnit.SECONDS)) break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+}
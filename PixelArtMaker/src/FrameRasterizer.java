@@ -0,0 +1,116 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Scales PixelBuffer cells into ARGB pixels for export and preview images.
+ * Pixels are written straight into the int array behind a TYPE_INT_ARGB image: each run
+ * of equal cells in a row becomes one Arrays.fill, and the finished line is copied down
+ * for the remaining lines of the cell. At scale 1 rows are copied as they are.
+ */
+public final class FrameRasterizer {
+    private FrameRasterizer() {}
+
+    /**
+     * @param backgroundMode 0=white, 1=black, 2=transparent
+     * @return the ARGB value transparent cells are rendered as
+     */
+    public static int backgroundArgb(int backgroundMode) {
+        if (backgroundMode == 1) return 0xFF000000;
+        if (backgroundMode == 2) return PixelBuffer.TRANSPARENT;
+        return 0xFFFFFFFF;
+    }
+
+    /**
+     * Renders a whole frame into a TYPE_INT_ARGB image.
+     * @param src the frame
+     * @param pixelSize output pixels per cell
+     * @param background ARGB value for transparent cells
+     * @param reuse image to draw into if it is TYPE_INT_ARGB and the right size, or null
+     * @return the rendered image (reuse when it fit)
+     */
+    public static BufferedImage renderImage(PixelBuffer src, int pixelSize, int background, BufferedImage reuse) {
+        int width = src.getWidth() * pixelSize, height = src.getHeight() * pixelSize;
+        BufferedImage img = reuse;
+        if (img == null || img.getType() != BufferedImage.TYPE_INT_ARGB
+                || img.getWidth() != width || img.getHeight() != height) {
+            img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        render(src, pixelSize, background, pixels(img), 0, width);
+        return img;
+    }
+
+    /**
+     * Renders a whole frame into a pixel array.
+     * @param src the frame
+     * @param pixelSize output pixels per cell
+     * @param background ARGB value for transparent cells
+     * @param dst destination pixels
+     * @param offset index of the top-left output pixel in dst
+     * @param stride dst elements per output line
+     */
+    public static void render(PixelBuffer src, int pixelSize, int background, int[] dst, int offset, int stride) {
+        render(src, 0, 0, src.getWidth(), src.getHeight(), pixelSize, background, dst, offset, stride);
+    }
+
+    /**
+     * Renders a rectangle of cells into a pixel array.
+     * @param src the frame
+     * @param sx first cell column
+     * @param sy first cell row
+     * @param sw number of cell columns
+     * @param sh number of cell rows
+     * @param pixelSize output pixels per cell
+     * @param background ARGB value for transparent cells
+     * @param dst destination pixels
+     * @param offset index of the top-left output pixel in dst
+     * @param stride dst elements per output line
+     */
+    public static void render(PixelBuffer src, int sx, int sy, int sw, int sh, int pixelSize, int background,
+                              int[] dst, int offset, int stride) {
+        int[] cells = src.getPixels();
+        int cols = src.getWidth();
+        if (pixelSize == 1) {
+            for (int y = 0; y < sh; y++) {
+                int s = (sy + y) * cols + sx;
+                int o = offset + y * stride;
+                if (background == PixelBuffer.TRANSPARENT) {
+                    System.arraycopy(cells, s, dst, o, sw);
+                } else {
+                    for (int x = 0; x < sw; x++) {
+                        int argb = cells[s + x];
+                        dst[o + x] = argb == PixelBuffer.TRANSPARENT ? background : argb;
+                    }
+                }
+            }
+            return;
+        }
+        int lineLength = sw * pixelSize;
+        for (int y = 0; y < sh; y++) {
+            int s = (sy + y) * cols + sx;
+            int end = s + sw;
+            int lineStart = offset + y * pixelSize * stride;
+            int o = lineStart;
+            while (s < end) {
+                int argb = cells[s];
+                int run = s + 1;
+                while (run < end && cells[run] == argb) run++;
+                int length = (run - s) * pixelSize;
+                Arrays.fill(dst, o, o + length, argb == PixelBuffer.TRANSPARENT ? background : argb);
+                o += length;
+                s = run;
+            }
+            for (int k = 1; k < pixelSize; k++) {
+                System.arraycopy(dst, lineStart, dst, lineStart + k * stride, lineLength);
+            }
+        }
+    }
+
+    /**
+     * @param img a TYPE_INT_ARGB or TYPE_INT_RGB image
+     * @return the live pixel array behind the image
+     */
+    public static int[] pixels(BufferedImage img) {
+        return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    }
+}
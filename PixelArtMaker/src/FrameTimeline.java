@@ -0,0 +1,237 @@
+import javax.swing.JComponent;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.function.IntConsumer;
+
+/**
+ * Horizontal strip of frame thumbnails for the animation editor.
+ * The strip is one component however many frames there are: paintComponent only draws
+ * the cells inside the clip, i.e. the part scrolled into view. Missing thumbnails are drawn
+ * as placeholders and queued for a background thread, newest request first, so the cells
+ * the user is looking at fill in before ones scrolled past. Thumbnails are cached by
+ * IndexedFrameList.versionKey and regenerate only after their frame has been edited.
+ */
+public class FrameTimeline extends JComponent implements Scrollable {
+    public static final int THUMB_SIZE = 48;
+    public static final int MAX_THUMBNAILS = 1024;
+    private static final int PAD = 4;
+    private static final int LABEL_HEIGHT = 14;
+    private static final int CELL_WIDTH = THUMB_SIZE + 2 * PAD;
+    private static final int CELL_HEIGHT = THUMB_SIZE + 2 * PAD + LABEL_HEIGHT;
+
+    private volatile List<AnimationFrame> frames;
+    private int selected = -1;
+    private final IntConsumer onSelect;
+
+    // Thumbnail cache and requests, touched on the EDT only
+    private final Map<Object, BufferedImage> thumbnails = new LinkedHashMap<Object, BufferedImage>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, BufferedImage> eldest) {
+            return size() > MAX_THUMBNAILS;
+        }
+    };
+    private final Set<Object> requested = new HashSet<>();
+    private final LinkedBlockingDeque<Request> queue = new LinkedBlockingDeque<>();
+
+    // Cells scrolled into view at the last paint, so the worker can skip the others
+    private volatile int firstVisible, lastVisible = -1;
+
+    /**
+     * A thumbnail to render: the frame index and the version it had when requested.
+     */
+    private static final class Request {
+        final List<AnimationFrame> frames;
+        final int index;
+        final Object key;
+
+        Request(List<AnimationFrame> frames, int index, Object key) {
+            this.frames = frames;
+            this.index = index;
+            this.key = key;
+        }
+    }
+
+    /**
+     * @param frames the frames to show
+     * @param onSelect called on the EDT with the index of a clicked frame
+     */
+    public FrameTimeline(List<AnimationFrame> frames, IntConsumer onSelect) {
+        this.frames = frames;
+        this.onSelect = onSelect;
+        setOpaque(true);
+        setBackground(new Color(235, 235, 235));
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                int index = e.getX() / CELL_WIDTH;
+                if (index >= 0 && index < FrameTimeline.this.frames.size()) FrameTimeline.this.onSelect.accept(index);
+            }
+        });
+        Thread worker = new Thread(this::renderLoop, "thumbnail-renderer");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    /**
+     * Shows another frame list, or the same one after frames were added or removed.
+     */
+    public void setFrames(List<AnimationFrame> frames) {
+        this.frames = frames;
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Highlights a frame and scrolls it into view.
+     */
+    public void setSelectedIndex(int index) {
+        if (selected >= 0) repaint(cellBounds(selected));
+        selected = index;
+        if (index < 0) return;
+        Rectangle cell = cellBounds(index);
+        repaint(cell);
+        scrollRectToVisible(cell);
+    }
+
+    public int getSelectedIndex() { return selected; }
+
+    private static Rectangle cellBounds(int index) {
+        return new Rectangle(index * CELL_WIDTH, 0, CELL_WIDTH, CELL_HEIGHT);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(Math.max(1, frames.size()) * CELL_WIDTH, CELL_HEIGHT);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g;
+        Rectangle clip = g2.getClipBounds();
+        if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+        g2.setColor(getBackground());
+        g2.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        int count = frames.size();
+        int first = Math.max(0, clip.x / CELL_WIDTH);
+        int last = Math.min(count - 1, (clip.x + clip.width - 1) / CELL_WIDTH);
+        Rectangle view = getVisibleRect();
+        firstVisible = view.x / CELL_WIDTH;
+        lastVisible = (view.x + view.width - 1) / CELL_WIDTH;
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        for (int i = first; i <= last; i++) {
+            int x = i * CELL_WIDTH;
+            if (i == selected) {
+                g2.setColor(new Color(51, 122, 183));
+                g2.fillRect(x + 1, 1, CELL_WIDTH - 2, CELL_HEIGHT - 2);
+            }
+            g2.setColor(Color.WHITE);
+            g2.fillRect(x + PAD, PAD, THUMB_SIZE, THUMB_SIZE);
+            BufferedImage thumb = thumbnail(i);
+            if (thumb != null) {
+                g2.drawImage(thumb, x + PAD + (THUMB_SIZE - thumb.getWidth()) / 2,
+                        PAD + (THUMB_SIZE - thumb.getHeight()) / 2, null);
+            } else {
+                g2.setColor(Color.LIGHT_GRAY);
+                g2.drawRect(x + PAD, PAD, THUMB_SIZE - 1, THUMB_SIZE - 1);
+            }
+            g2.setColor(i == selected ? Color.WHITE : Color.DARK_GRAY);
+            String label = String.valueOf(i + 1);
+            int textWidth = g2.getFontMetrics().stringWidth(label);
+            g2.drawString(label, x + (CELL_WIDTH - textWidth) / 2, CELL_HEIGHT - PAD - 2);
+        }
+    }
+
+    /**
+     * @return the cached thumbnail of a frame, or null after queueing it for rendering
+     */
+    private BufferedImage thumbnail(int index) {
+        Object key = IndexedFrameList.versionKey(frames, index);
+        BufferedImage thumb = thumbnails.get(key);
+        if (thumb == null && requested.add(key)) queue.addFirst(new Request(frames, index, key));
+        return thumb;
+    }
+
+    private void renderLoop() {
+        while (true) {
+            Request r;
+            try {
+                r = queue.takeFirst();
+            } catch (InterruptedException e) {
+                return;
+            }
+            BufferedImage thumb = null;
+            try {
+                // Skip frames scrolled out of view or edited since; they are requested again when painted
+                boolean current = r.frames == frames && r.index >= firstVisible && r.index <= lastVisible
+                        && r.index < r.frames.size() && r.key.equals(IndexedFrameList.versionKey(r.frames, r.index));
+                if (current) thumb = render(IndexedFrameList.copyPixels(r.frames, r.index));
+            } catch (IndexOutOfBoundsException e) {
+                // Frame deleted meanwhile
+            }
+            BufferedImage result = thumb;
+            SwingUtilities.invokeLater(() -> {
+                requested.remove(r.key);
+                if (result != null) thumbnails.put(r.key, result);
+                // A skipped cell that is in view after all asks again when it repaints
+                Rectangle cell = cellBounds(r.index);
+                if (r.index < frames.size() && (result != null || getVisibleRect().intersects(cell))) repaint(cell);
+            });
+        }
+    }
+
+    /**
+     * Scales a frame to fit THUMB_SIZE, keeping its aspect ratio, by sampling cells.
+     */
+    static BufferedImage render(PixelBuffer frame) {
+        int cols = frame.getWidth(), rows = frame.getHeight();
+        double scale = (double) THUMB_SIZE / Math.max(cols, rows);
+        int w = Math.max(1, (int) Math.round(cols * scale)), h = Math.max(1, (int) Math.round(rows * scale));
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        int[] out = FrameRasterizer.pixels(img);
+        int[] src = frame.getPixels();
+        for (int y = 0; y < h; y++) {
+            int row = (int) ((long) y * rows / h) * cols;
+            for (int x = 0; x < w; x++) out[y * w + x] = src[row + (int) ((long) x * cols / w)];
+        }
+        return img;
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return new Dimension(10 * CELL_WIDTH, CELL_HEIGHT);
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) {
+        return orientation == SwingConstants.HORIZONTAL ? CELL_WIDTH : 1;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+        return orientation == SwingConstants.HORIZONTAL ? Math.max(CELL_WIDTH, visible.width - CELL_WIDTH) : CELL_HEIGHT;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() { return false; }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() { return true; }
+}
@@ -0,0 +1,247 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Minimal GIF89a writer for palette-indexed frames.
+ * Frames are given as one byte per pixel indexing either the global color table or a
+ * per-frame local table, so colors are written exactly as they are. The LZW step is a
+ * static method so callers can compress frames on other threads and hand the finished
+ * bytes to writeFrame() in order.
+ */
+public class GifEncoder implements Closeable {
+    public static final int DISPOSE_NONE = 1;
+    public static final int DISPOSE_BACKGROUND = 2;
+
+    private static final int MAX_CODES = 4096;
+
+    private final OutputStream out;
+    private boolean closed = false;
+
+    /**
+     * Writes the GIF header, the global color table and the looping extension.
+     * @param out destination stream; closed by close()
+     * @param width logical screen width
+     * @param height logical screen height
+     * @param globalColors colors of the global table (at most 256), or null for none
+     * @param loopCount number of repeats, 0 to loop forever, -1 to play once
+     * @throws IOException if writing fails
+     */
+    public GifEncoder(OutputStream out, int width, int height, int[] globalColors, int loopCount) throws IOException {
+        this.out = out;
+        out.write(new byte[] {'G', 'I', 'F', '8', '9', 'a'});
+        writeShort(width);
+        writeShort(height);
+        if (globalColors != null) {
+            int bits = tableBits(globalColors.length);
+            out.write(0x80 | 0x70 | (bits - 1));
+            out.write(0); // background color index
+            out.write(0); // pixel aspect ratio
+            writeColorTable(globalColors, bits);
+        } else {
+            out.write(0x70);
+            out.write(0);
+            out.write(0);
+        }
+        if (loopCount >= 0) {
+            out.write(new byte[] {0x21, (byte) 0xFF, 0x0B,
+                    'N', 'E', 'T', 'S', 'C', 'A', 'P', 'E', '2', '.', '0', 0x03, 0x01});
+            writeShort(loopCount);
+            out.write(0);
+        }
+    }
+
+    /**
+     * Writes one frame whose pixel data was compressed with encodeImageData().
+     * @param x left offset of the frame on the logical screen
+     * @param y top offset of the frame on the logical screen
+     * @param width frame width
+     * @param height frame height
+     * @param localColors local color table, or null to use the global table
+     * @param delayMs display time in milliseconds (stored in hundredths of a second)
+     * @param disposal DISPOSE_NONE or DISPOSE_BACKGROUND
+     * @param transparentIndex palette index drawn as transparent, or -1 for none
+     * @param imageData the compressed data from encodeImageData()
+     * @throws IOException if writing fails
+     */
+    public void writeFrame(int x, int y, int width, int height, int[] localColors, int delayMs,
+                           int disposal, int transparentIndex, byte[] imageData) throws IOException {
+        // Graphic control extension
+        out.write(0x21);
+        out.write(0xF9);
+        out.write(4);
+        out.write((disposal & 7) << 2 | (transparentIndex >= 0 ? 1 : 0));
+        writeShort(Math.min(0xFFFF, Math.max(0, (delayMs + 5) / 10)));
+        out.write(Math.max(0, transparentIndex));
+        out.write(0);
+
+        // Image descriptor
+        out.write(0x2C);
+        writeShort(x);
+        writeShort(y);
+        writeShort(width);
+        writeShort(height);
+        if (localColors != null) {
+            int bits = tableBits(localColors.length);
+            out.write(0x80 | (bits - 1));
+            writeColorTable(localColors, bits);
+        } else {
+            out.write(0);
+        }
+        out.write(imageData);
+    }
+
+    /**
+     * Writes the trailer and closes the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            out.write(0x3B);
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * LZW-compresses palette indices into GIF image data: the minimum code size byte,
+     * the data sub-blocks and the block terminator.
+     * @param pixels palette indices, row-major
+     * @param count number of pixels to encode
+     * @param colorCount size of the palette the indices refer to
+     * @return the encoded image data
+     */
+    public static byte[] encodeImageData(byte[] pixels, int count, int colorCount) {
+        int minCodeSize = Math.max(2, tableBits(colorCount));
+        int clearCode = 1 << minCodeSize;
+        int endCode = clearCode + 1;
+
+        // Open-addressing table from (prefix code << 8 | next index) to code; 0 marks empty
+        int[] keys = new int[8192];
+        short[] codes = new short[8192];
+        int mask = keys.length - 1;
+
+        BitSink sink = new BitSink(count / 2 + 64);
+        sink.out.put(minCodeSize);
+        int codeSize = minCodeSize + 1;
+        int nextCode = clearCode + 2;
+        sink.write(clearCode, codeSize);
+
+        if (count > 0) {
+            int prefix = pixels[0] & 0xFF;
+            for (int p = 1; p < count; p++) {
+                int k = pixels[p] & 0xFF;
+                int key = (prefix << 8 | k) + 1;
+                int slot = (key * 0x9E3779B1 >>> 19) & mask;
+                while (keys[slot] != 0 && keys[slot] != key) slot = (slot + 1) & mask;
+                if (keys[slot] == key) {
+                    prefix = codes[slot];
+                    continue;
+                }
+                sink.write(prefix, codeSize);
+                if (nextCode < MAX_CODES) {
+                    keys[slot] = key;
+                    codes[slot] = (short) nextCode++;
+                    // The decoder adds its entry one code later, so widen one step late too
+                    if (nextCode == (1 << codeSize) + 1 && codeSize < 12) codeSize++;
+                } else {
+                    sink.write(clearCode, codeSize);
+                    java.util.Arrays.fill(keys, 0);
+                    codeSize = minCodeSize + 1;
+                    nextCode = clearCode + 2;
+                }
+                prefix = k;
+            }
+            sink.write(prefix, codeSize);
+        }
+        sink.write(endCode, codeSize);
+        sink.flushBits();
+        return sink.out.toSubBlocks();
+    }
+
+    /**
+     * @return bits needed for a color table holding n entries (1..8)
+     */
+    static int tableBits(int n) {
+        int bits = 1;
+        while ((1 << bits) < n && bits < 8) bits++;
+        return bits;
+    }
+
+    private void writeColorTable(int[] colors, int bits) throws IOException {
+        byte[] table = new byte[3 << bits];
+        for (int i = 0; i < colors.length && i < (1 << bits); i++) {
+            table[i * 3] = (byte) (colors[i] >> 16);
+            table[i * 3 + 1] = (byte) (colors[i] >> 8);
+            table[i * 3 + 2] = (byte) colors[i];
+        }
+        out.write(table);
+    }
+
+    private void writeShort(int v) throws IOException {
+        out.write(v & 0xFF);
+        out.write((v >> 8) & 0xFF);
+    }
+
+    /**
+     * Packs variable-width codes least significant bit first.
+     */
+    private static final class BitSink {
+        final ByteList out;
+        int bitBuffer = 0;
+        int bitCount = 0;
+
+        BitSink(int capacity) { out = new ByteList(capacity); }
+
+        void write(int code, int size) {
+            bitBuffer |= code << bitCount;
+            bitCount += size;
+            while (bitCount >= 8) {
+                out.put(bitBuffer & 0xFF);
+                bitBuffer >>>= 8;
+                bitCount -= 8;
+            }
+        }
+
+        void flushBits() {
+            if (bitCount > 0) out.put(bitBuffer & 0xFF);
+            bitBuffer = 0;
+            bitCount = 0;
+        }
+    }
+
+    /**
+     * Growable byte array; the first byte is the minimum code size, the rest is LZW output.
+     */
+    private static final class ByteList {
+        byte[] data;
+        int size = 0;
+
+        ByteList(int capacity) { data = new byte[Math.max(16, capacity)]; }
+
+        void put(int b) {
+            if (size == data.length) data = java.util.Arrays.copyOf(data, size * 2);
+            data[size++] = (byte) b;
+        }
+
+        byte[] toSubBlocks() {
+            int payload = size - 1;
+            int blocks = (payload + 254) / 255;
+            byte[] result = new byte[1 + payload + blocks + 1];
+            result[0] = data[0];
+            int src = 1, dst = 1;
+            while (src < size) {
+                int n = Math.min(255, size - src);
+                result[dst++] = (byte) n;
+                System.arraycopy(data, src, result, dst, n);
+                src += n;
+                dst += n;
+            }
+            result[dst] = 0;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes animation frames to an animated GIF without touching Swing.
+ * Frames are scaled, mapped to exact palette indices and LZW-compressed on a pool of
+ * worker threads, while the calling thread writes the finished frames to the file in
+ * frame order. Only a few frames ahead of the writer are in flight at once, so memory
+ * stays bounded for long animations. Each frame after the first only covers the cells
+ * that changed, with unchanged cells left transparent, and carries its own delay.
+ * Animations whose frames need more than 256 colors go through ImageIO's quantizer instead.
+ */
+public class GifExporter {
+    private final List<AnimationFrame> frames;
+    private final int pixelSize;
+    private final int backgroundMode;
+    private int loopDelay = 0;
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * @param frames the frames to export
+     * @param pixelSize output pixels per canvas cell
+     * @param backgroundMode 0=white, 1=black, 2=transparent
+     */
+    public GifExporter(List<AnimationFrame> frames, int pixelSize, int backgroundMode) {
+        this.frames = frames;
+        this.pixelSize = Math.max(1, pixelSize);
+        this.backgroundMode = backgroundMode;
+    }
+
+    public void setThreads(int threads) { this.threads = Math.max(1, threads); }
+
+    /**
+     * @param loopDelay extra milliseconds the last frame stays up before the animation repeats
+     */
+    public void setLoopDelay(int loopDelay) { this.loopDelay = Math.max(0, loopDelay); }
+
+    /**
+     * Encodes all frames into the file. A cancelled export deletes the partly written file.
+     * @param file destination .gif
+     * @param progress receives a call per written frame and is polled for cancellation
+     * @return true if the file was written, false if the export was cancelled
+     * @throws IOException if rendering or writing fails
+     */
+    public boolean export(File file, ExportProgress progress) throws IOException {
+        if (frames.isEmpty()) throw new IOException("No animation frames to export");
+        boolean finished = false;
+        try {
+            // Frame differencing needs palette index 0 free for "unchanged"; with an opaque
+            // background that costs a slot, so give it up if the colors only fit without it
+            boolean reserveTransparent = true;
+            ColorPalette global = buildGlobalPalette(true);
+            boolean fits = global != null || allFramesFitPalette(true);
+            if (!fits && backgroundArgb() != PixelBuffer.TRANSPARENT) {
+                reserveTransparent = false;
+                global = buildGlobalPalette(false);
+                fits = global != null || allFramesFitPalette(false);
+            }
+            if (fits) {
+                finished = exportIndexed(file, global, reserveTransparent, progress);
+            } else {
+                finished = exportWithImageIO(file, progress);
+            }
+            return finished;
+        } finally {
+            if (!finished) file.delete();
+        }
+    }
+
+    /**
+     * What to write for one frame: the rectangle of cells that differ from what is on
+     * screen after the previous frame, and how this frame is disposed of afterwards.
+     */
+    static final class FramePlan {
+        final int index;
+        final int x, y, width, height;
+        final int disposal;
+        final int delayMs;
+        // Cells the previous frame's disposal cleared to transparent, or null
+        final Rectangle cleared;
+
+        FramePlan(int index, int x, int y, int width, int height, int disposal, int delayMs, Rectangle cleared) {
+            this.index = index;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.disposal = disposal;
+            this.delayMs = delayMs;
+            this.cleared = cleared;
+        }
+
+        Rectangle bounds() { return new Rectangle(x, y, width, height); }
+    }
+
+    /**
+     * One frame compressed by a worker and waiting for the writer.
+     */
+    private static final class EncodedFrame {
+        final FramePlan plan;
+        final int[] localColors;
+        final byte[] imageData;
+
+        EncodedFrame(FramePlan plan, int[] localColors, byte[] imageData) {
+            this.plan = plan;
+            this.localColors = localColors;
+            this.imageData = imageData;
+        }
+    }
+
+    /**
+     * Writes the frames with GifEncoder, using the shared palette as the global color
+     * table or, when it is null, a local table per frame.
+     * @param reserveTransparent whether palette index 0 is free to mark unchanged pixels
+     */
+    private boolean exportIndexed(File file, ColorPalette global, boolean reserveTransparent,
+                                  ExportProgress progress) throws IOException {
+        PixelBuffer first = frames.get(0).data;
+        int cols = first.getWidth(), rows = first.getHeight();
+        int transparentIndex = reserveTransparent ? 0 : -1;
+
+        FileOutputStream fileOut = new FileOutputStream(file);
+        boolean finished = false;
+        try {
+            GifEncoder encoder = new GifEncoder(new BufferedOutputStream(fileOut, 1 << 16),
+                    cols * pixelSize, rows * pixelSize, global != null ? global.toArray() : null, 0);
+            FramePlan[] previous = new FramePlan[1];
+            finished = FramePipeline.run(frames.size(), threads, "gif-export", index -> {
+                        FramePlan plan = reserveTransparent
+                                ? planFrame(index, previous[0], cols, rows)
+                                : new FramePlan(index, 0, 0, cols, rows, GifEncoder.DISPOSE_NONE, frameDelay(index), null);
+                        previous[0] = plan;
+                        return () -> encodeFrame(plan, global, reserveTransparent);
+                    },
+                    f -> encoder.writeFrame(f.plan.x * pixelSize, f.plan.y * pixelSize,
+                            f.plan.width * pixelSize, f.plan.height * pixelSize, f.localColors,
+                            f.plan.delayMs, f.plan.disposal, transparentIndex, f.imageData),
+                    progress);
+            if (finished) encoder.close();
+            return finished;
+        } finally {
+            if (!finished) fileOut.close();
+        }
+    }
+
+    /**
+     * Works out which cells of a frame have to be written. A cell is skipped when it already
+     * shows the right color after the previous frame. With a transparent background a cell
+     * that turns transparent in the next frame cannot be cleared by drawing over it, so this
+     * frame then covers those cells too and is restored to the background after display.
+     * Frame 0 is planned as if drawn on an empty screen, which also holds when the animation
+     * loops because the last frame is planned against frame 0.
+     * @param index frame to plan
+     * @param previous plan of the frame before, or null for frame 0
+     * @param cols animation width in cells
+     * @param rows animation height in cells
+     * @return the plan
+     */
+    FramePlan planFrame(int index, FramePlan previous, int cols, int rows) {
+        int total = frames.size();
+        PixelBuffer cur = frames.get(index).data;
+        PixelBuffer prev = index > 0 ? frames.get(index - 1).data : null;
+        PixelBuffer next = backgroundArgb() == PixelBuffer.TRANSPARENT && total > 1
+                ? frames.get((index + 1) % total).data : null;
+        Rectangle cleared = index == 0 ? new Rectangle(0, 0, cols, rows)
+                : previous.disposal == GifEncoder.DISPOSE_BACKGROUND ? previous.bounds() : null;
+
+        int minX = cols, minY = rows, maxX = -1, maxY = -1;
+        boolean clears = false;
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                int v = valueAt(cur, x, y);
+                int shown = cleared != null && cleared.contains(x, y) ? PixelBuffer.TRANSPARENT : valueAt(prev, x, y);
+                boolean mark = v != shown;
+                if (next != null && v != PixelBuffer.TRANSPARENT && valueAt(next, x, y) == PixelBuffer.TRANSPARENT) {
+                    clears = true;
+                    mark = true;
+                }
+                if (mark) {
+                    if (x < minX) minX = x;
+                    if (x > maxX) maxX = x;
+                    if (y < minY) minY = y;
+                    if (y > maxY) maxY = y;
+                }
+            }
+        }
+        if (maxX < 0) {
+            // Nothing changed; GIF still needs an image, so write one unchanged cell
+            minX = minY = maxX = maxY = 0;
+        }
+        int disposal = clears ? GifEncoder.DISPOSE_BACKGROUND : GifEncoder.DISPOSE_NONE;
+        return new FramePlan(index, minX, minY, maxX - minX + 1, maxY - minY + 1, disposal, frameDelay(index), cleared);
+    }
+
+    /**
+     * Maps the planned rectangle of a frame to palette indices at export scale and
+     * LZW-compresses it. Cells that already show the right color get index 0.
+     * @param plan the frame's plan
+     * @param global the shared palette, or null to build a local one for this frame
+     * @param reserveTransparent whether index 0 marks unchanged cells
+     * @return the compressed frame
+     */
+    EncodedFrame encodeFrame(FramePlan plan, ColorPalette global, boolean reserveTransparent) {
+        PixelBuffer cur = frames.get(plan.index).data;
+        PixelBuffer prev = plan.index > 0 ? frames.get(plan.index - 1).data : null;
+        ColorPalette palette = global;
+        if (palette == null) {
+            palette = new ColorPalette();
+            if (reserveTransparent) palette.add(PixelBuffer.TRANSPARENT);
+        }
+        int w = plan.width, h = plan.height;
+        byte[] indices = new byte[w * h];
+        for (int yy = 0; yy < h; yy++) {
+            for (int xx = 0; xx < w; xx++) {
+                int x = plan.x + xx, y = plan.y + yy;
+                int v = valueAt(cur, x, y);
+                int index;
+                if (reserveTransparent && (v == PixelBuffer.TRANSPARENT
+                        || ((plan.cleared == null || !plan.cleared.contains(x, y)) && v == valueAt(prev, x, y)))) {
+                    index = 0;
+                } else {
+                    index = global != null ? global.indexOf(v) : palette.add(v);
+                }
+                indices[yy * w + xx] = (byte) index;
+            }
+        }
+        byte[] scaled = scaleIndices(indices, w, h);
+        byte[] imageData = GifEncoder.encodeImageData(scaled, scaled.length, palette.size());
+        return new EncodedFrame(plan, global != null ? null : palette.toArray(), imageData);
+    }
+
+    /**
+     * @return the cell's color with the background applied; cells outside a smaller frame count as background
+     */
+    private int valueAt(PixelBuffer data, int x, int y) {
+        if (data == null || x >= data.getWidth() || y >= data.getHeight()) return backgroundArgb();
+        int argb = data.get(x, y);
+        return argb == PixelBuffer.TRANSPARENT ? backgroundArgb() : argb;
+    }
+
+    /**
+     * @return display time of a frame, matching the editor's playback: 100 ms when unset,
+     *         and the loop delay added to the last frame
+     */
+    private int frameDelay(int index) {
+        int delay = frames.get(index).delay;
+        if (delay <= 0) delay = 100;
+        if (index == frames.size() - 1) delay += loopDelay;
+        return delay;
+    }
+
+    /**
+     * Collects the colors of every frame into one palette.
+     * @param reserveTransparent whether index 0 is kept for transparent
+     * @return the palette, or null if the frames use more than 256 colors together
+     */
+    private ColorPalette buildGlobalPalette(boolean reserveTransparent) {
+        int background = backgroundArgb();
+        ColorPalette palette = new ColorPalette();
+        if (reserveTransparent || background == PixelBuffer.TRANSPARENT) palette.add(PixelBuffer.TRANSPARENT);
+        for (AnimationFrame af : frames) {
+            if (!addColors(af.data, background, palette)) return null;
+        }
+        return palette;
+    }
+
+    private boolean allFramesFitPalette(boolean reserveTransparent) {
+        int background = backgroundArgb();
+        for (AnimationFrame af : frames) {
+            ColorPalette palette = new ColorPalette();
+            if (reserveTransparent || background == PixelBuffer.TRANSPARENT) palette.add(PixelBuffer.TRANSPARENT);
+            if (!addColors(af.data, background, palette)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return false as soon as the palette grows past 256 colors
+     */
+    private static boolean addColors(PixelBuffer data, int background, ColorPalette palette) {
+        int[] src = data.getPixels();
+        int n = data.getWidth() * data.getHeight();
+        int last = 0;
+        for (int i = 0; i < n; i++) {
+            int argb = src[i] == PixelBuffer.TRANSPARENT ? background : src[i];
+            if (i > 0 && argb == last) continue;
+            last = argb;
+            palette.add(argb);
+            if (palette.size() > 256) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes frames through GifSequenceWriter and ImageIO, for frames that need more than 256 colors.
+     */
+    private boolean exportWithImageIO(File file, ExportProgress progress) throws IOException {
+        // Go through a FileOutputStream so an existing, longer file is truncated
+        FileOutputStream fileOut = new FileOutputStream(file);
+        ImageOutputStream output = ImageIO.createImageOutputStream(fileOut);
+        try {
+            GifSequenceWriter writer = new GifSequenceWriter(output, BufferedImage.TYPE_INT_ARGB,
+                    frameDelay(0), true);
+            int[] written = {0};
+            boolean finished = FramePipeline.run(frames.size(), threads, "gif-export", index -> () -> renderFrame(frames.get(index).data),
+                    img -> writer.writeToSequence(img, 0, 0, frameDelay(written[0]++), "restoreToBackgroundColor"),
+                    progress);
+            if (finished) writer.close();
+            return finished;
+        } finally {
+            output.close();
+            fileOut.close();
+        }
+    }
+
+    private byte[] scaleIndices(byte[] indices, int w, int h) {
+        if (pixelSize == 1) return indices;
+        int outW = w * pixelSize;
+        byte[] out = new byte[outW * h * pixelSize];
+        for (int y = 0; y < h; y++) {
+            // Scale one row horizontally, then repeat it pixelSize times
+            int rowStart = y * pixelSize * outW;
+            for (int x = 0; x < w; x++) {
+                byte index = indices[y * w + x];
+                int o = rowStart + x * pixelSize;
+                for (int k = 0; k < pixelSize; k++) out[o + k] = index;
+            }
+            for (int k = 1; k < pixelSize; k++) {
+                System.arraycopy(out, rowStart, out, rowStart + k * outW, outW);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Renders one frame at export scale for the ImageIO path. Frames with at most 256
+     * colors come back as a TYPE_BYTE_INDEXED image holding exactly their colors; busier
+     * frames are returned as ARGB and left to ImageIO's own quantizer.
+     * @param data the frame pixels
+     * @return the image to write
+     */
+    BufferedImage renderFrame(PixelBuffer data) {
+        int w = data.getWidth(), h = data.getHeight();
+        int[] src = data.getPixels();
+        int background = backgroundArgb();
+
+        // Transparent pixels share palette index 0 when the background is transparent
+        ColorPalette palette = new ColorPalette();
+        if (background == PixelBuffer.TRANSPARENT) palette.add(PixelBuffer.TRANSPARENT);
+        byte[] indices = new byte[w * h];
+        for (int i = 0; i < w * h; i++) {
+            int argb = src[i] == PixelBuffer.TRANSPARENT ? background : src[i];
+            int index = palette.add(argb);
+            if (index > 255) return FrameRasterizer.renderImage(data, pixelSize, background, null);
+            indices[i] = (byte) index;
+        }
+
+        int[] colors = palette.toArray();
+        // IndexColorModel needs at least two entries
+        int mapSize = Math.max(2, colors.length);
+        byte[] r = new byte[mapSize], g = new byte[mapSize], b = new byte[mapSize];
+        for (int i = 0; i < colors.length; i++) {
+            r[i] = (byte) (colors[i] >> 16);
+            g[i] = (byte) (colors[i] >> 8);
+            b[i] = (byte) colors[i];
+        }
+        int transparent = background == PixelBuffer.TRANSPARENT ? 0 : -1;
+        IndexColorModel icm = new IndexColorModel(8, mapSize, r, g, b, transparent);
+
+        int outW = w * pixelSize, outH = h * pixelSize;
+        BufferedImage img = new BufferedImage(outW, outH, BufferedImage.TYPE_BYTE_INDEXED, icm);
+        byte[] out = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+        System.arraycopy(scaleIndices(indices, w, h), 0, out, 0, outW * outH);
+        return img;
+    }
+
+    private int backgroundArgb() {
+        return FrameRasterizer.backgroundArgb(backgroundMode);
+    }
+}
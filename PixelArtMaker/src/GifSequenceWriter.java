@@ -14,6 +14,9 @@ public class GifSequenceWriter {
     protected ImageWriter gifWriter;
     protected ImageWriteParam imageWriteParam;
     protected IIOMetadata imageMetaData;
+    protected int timeBetweenFramesMS;
+    protected boolean loopContinuously;
+    protected boolean firstImage = true;
 
     /**
      * Creates a new GifSequenceWriter
@@ -31,22 +34,88 @@ public class GifSequenceWriter {
             boolean loopContinuously) throws IOException {
         gifWriter = getWriter();
         imageWriteParam = gifWriter.getDefaultWriteParam();
+        this.timeBetweenFramesMS = timeBetweenFramesMS;
+        this.loopContinuously = loopContinuously;
         ImageTypeSpecifier imageTypeSpecifier = ImageTypeSpecifier.createFromBufferedImageType(imageType);
 
-        imageMetaData = gifWriter.getDefaultImageMetadata(imageTypeSpecifier, imageWriteParam);
+        imageMetaData = createMetadata(imageTypeSpecifier, 0, true, timeBetweenFramesMS, "restoreToBackgroundColor");
 
-        String metaFormatName = imageMetaData.getNativeMetadataFormatName();
+        gifWriter.setOutput(outputStream);
 
-        IIOMetadataNode root = (IIOMetadataNode) imageMetaData.getAsTree(metaFormatName);
+        gifWriter.prepareWriteSequence(null);
+    }
+
+    /**
+     * Builds image metadata for one frame and, for the first frame, the loop extension.
+     * @param imageTypeSpecifier type of the image the metadata is for
+     * @param transparentIndex palette index to treat as transparent, or -1 for none
+     * @param includeLoop whether to add the NETSCAPE looping extension
+     * @param delayMs display time of the frame in milliseconds
+     * @param disposalMethod GIF disposal method name, e.g. "none" or "restoreToBackgroundColor"
+     * @return the metadata
+     * @throws IOException if the metadata tree cannot be applied
+     */
+    protected IIOMetadata createMetadata(ImageTypeSpecifier imageTypeSpecifier, int transparentIndex,
+                                         boolean includeLoop, int delayMs, String disposalMethod) throws IOException {
+        IIOMetadata metadata = gifWriter.getDefaultImageMetadata(imageTypeSpecifier, imageWriteParam);
+
+        String metaFormatName = metadata.getNativeMetadataFormatName();
+
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(metaFormatName);
 
         IIOMetadataNode graphicsControlExtensionNode = getNode(root, "GraphicControlExtension");
 
-        graphicsControlExtensionNode.setAttribute("disposalMethod", "restoreToBackgroundColor");
+        graphicsControlExtensionNode.setAttribute("disposalMethod", disposalMethod);
         graphicsControlExtensionNode.setAttribute("userInputFlag", "FALSE");
-        graphicsControlExtensionNode.setAttribute("transparentColorFlag", "TRUE");
-        graphicsControlExtensionNode.setAttribute("delayTime", Integer.toString(timeBetweenFramesMS / 10));
-        graphicsControlExtensionNode.setAttribute("transparentColorIndex", "0");
+        graphicsControlExtensionNode.setAttribute("transparentColorFlag", transparentIndex >= 0 ? "TRUE" : "FALSE");
+        graphicsControlExtensionNode.setAttribute("delayTime", Integer.toString(delayMs / 10));
+        graphicsControlExtensionNode.setAttribute("transparentColorIndex", Integer.toString(Math.max(0, transparentIndex)));
+
+        if (includeLoop) {
+            addLoopExtension(root);
+        }
+
+        metadata.setFromTree(metaFormatName, root);
+        return metadata;
+    }
+
+    /**
+     * Stores the model's colors as the image's local color table; without one ImageIO maps
+     * the indices through its own default palette.
+     */
+    private static void setLocalColorTable(IIOMetadata metadata, IndexColorModel icm) throws IOException {
+        String metaFormatName = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(metaFormatName);
+        IIOMetadataNode table = getNode(root, "LocalColorTable");
+        while (table.getFirstChild() != null) {
+            table.removeChild(table.getFirstChild());
+        }
+        int tableSize = 2;
+        while (tableSize < icm.getMapSize()) tableSize <<= 1;
+        table.setAttribute("sizeOfLocalColorTable", Integer.toString(tableSize));
+        table.setAttribute("sortFlag", "FALSE");
+        for (int i = 0; i < tableSize; i++) {
+            int rgb = i < icm.getMapSize() ? icm.getRGB(i) : 0;
+            IIOMetadataNode entry = new IIOMetadataNode("ColorTableEntry");
+            entry.setAttribute("index", Integer.toString(i));
+            entry.setAttribute("red", Integer.toString((rgb >> 16) & 0xFF));
+            entry.setAttribute("green", Integer.toString((rgb >> 8) & 0xFF));
+            entry.setAttribute("blue", Integer.toString(rgb & 0xFF));
+            table.appendChild(entry);
+        }
+        metadata.setFromTree(metaFormatName, root);
+    }
 
+    private static void setImagePosition(IIOMetadata metadata, int left, int top) throws IOException {
+        String metaFormatName = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(metaFormatName);
+        IIOMetadataNode descriptor = getNode(root, "ImageDescriptor");
+        descriptor.setAttribute("imageLeftPosition", Integer.toString(left));
+        descriptor.setAttribute("imageTopPosition", Integer.toString(top));
+        metadata.setFromTree(metaFormatName, root);
+    }
+
+    private void addLoopExtension(IIOMetadataNode root) {
         IIOMetadataNode appExtensionsNode = getNode(root, "ApplicationExtensions");
 
         IIOMetadataNode appExtensionNode = new IIOMetadataNode("ApplicationExtension");
@@ -62,16 +131,50 @@ public class GifSequenceWriter {
                 (byte) ((loop >> 8) & 0xFF)
         });
         appExtensionsNode.appendChild(appExtensionNode);
-
-        imageMetaData.setFromTree(metaFormatName, root);
-
-        gifWriter.setOutput(outputStream);
-
-        gifWriter.prepareWriteSequence(null);
     }
 
+    /**
+     * Writes the next full frame with the delay given to the constructor.
+     * @param img the frame
+     * @throws IOException if writing fails
+     */
     public void writeToSequence(RenderedImage img) throws IOException {
-        gifWriter.writeToSequence(new IIOImage(img, null, imageMetaData), imageWriteParam);
+        if (firstImage && !(img.getColorModel() instanceof IndexColorModel)) {
+            firstImage = false;
+            gifWriter.writeToSequence(new IIOImage(img, null, imageMetaData), imageWriteParam);
+            return;
+        }
+        writeToSequence(img, 0, 0, timeBetweenFramesMS, "restoreToBackgroundColor");
+    }
+
+    /**
+     * Writes the next frame with its own timing and placement. Palette images keep their
+     * own colors (written as a local color table, with the model's transparent pixel as the
+     * transparent index); other images go through ImageIO's color conversion.
+     * @param img the frame, possibly smaller than the animation
+     * @param left x offset of the frame within the animation
+     * @param top y offset of the frame within the animation
+     * @param delayMs display time of the frame in milliseconds
+     * @param disposalMethod GIF disposal method name, e.g. "none" or "restoreToBackgroundColor"
+     * @throws IOException if writing fails
+     */
+    public void writeToSequence(RenderedImage img, int left, int top, int delayMs, String disposalMethod) throws IOException {
+        int transparentIndex = 0;
+        IndexColorModel icm = null;
+        if (img.getColorModel() instanceof IndexColorModel) {
+            icm = (IndexColorModel) img.getColorModel();
+            transparentIndex = icm.getTransparentPixel();
+        }
+        IIOMetadata metadata = createMetadata(ImageTypeSpecifier.createFromRenderedImage(img), transparentIndex,
+                firstImage, delayMs, disposalMethod);
+        if (icm != null) {
+            setLocalColorTable(metadata, icm);
+        }
+        if (left != 0 || top != 0) {
+            setImagePosition(metadata, left, top);
+        }
+        firstImage = false;
+        gifWriter.writeToSequence(new IIOImage(img, null, metadata), imageWriteParam);
     }
 
     /**
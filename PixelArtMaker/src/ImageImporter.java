@@ -0,0 +1,167 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Converts BufferedImages into canvas cells a row at a time.
+ * The image types ImageIO and the app produce (int RGB/ARGB, byte BGR/ABGR and indexed
+ * images of any bit depth) are read straight from their data buffers; anything else goes
+ * through getRGB one row at a time. Pixels whose alpha is below the threshold become
+ * transparent cells, all others become opaque cells of the same color.
+ */
+public final class ImageImporter {
+    /** Only fully transparent pixels become transparent cells. */
+    public static final int DEFAULT_ALPHA_THRESHOLD = 1;
+
+    private ImageImporter() {}
+
+    /**
+     * @param img the source image
+     * @param alphaThreshold lowest alpha (0-255) that still counts as opaque
+     * @return a buffer the size of the image
+     */
+    public static PixelBuffer toPixels(BufferedImage img, int alphaThreshold) {
+        PixelBuffer buffer = new PixelBuffer(img.getWidth(), img.getHeight());
+        read(img, alphaThreshold, buffer);
+        return buffer;
+    }
+
+    /**
+     * Copies the image into the buffer's top-left corner; whatever lies outside the
+     * smaller of the two is left alone.
+     * @param img the source image
+     * @param alphaThreshold lowest alpha (0-255) that still counts as opaque
+     * @param dst destination cells
+     */
+    public static void read(BufferedImage img, int alphaThreshold, PixelBuffer dst) {
+        int w = Math.min(img.getWidth(), dst.getWidth());
+        int h = Math.min(img.getHeight(), dst.getHeight());
+        if (w <= 0 || h <= 0) return;
+        int threshold = Math.max(0, Math.min(255, alphaThreshold));
+        int[] out = dst.getPixels();
+        int stride = dst.getWidth();
+        Raster raster = img.getRaster();
+        // Subimages share their parent's buffer at an offset; leave those to the generic path
+        boolean direct = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+
+        switch (direct ? img.getType() : BufferedImage.TYPE_CUSTOM) {
+            case BufferedImage.TYPE_INT_ARGB:
+                readInt(raster, w, h, threshold, true, out, stride);
+                return;
+            case BufferedImage.TYPE_INT_RGB:
+                readInt(raster, w, h, threshold, false, out, stride);
+                return;
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                readBytes(raster, w, h, threshold, 4, out, stride);
+                return;
+            case BufferedImage.TYPE_3BYTE_BGR:
+                readBytes(raster, w, h, threshold, 3, out, stride);
+                return;
+            default:
+                break;
+        }
+        if (img.getColorModel() instanceof IndexColorModel) {
+            readIndexed(img, direct, w, h, threshold, out, stride);
+            return;
+        }
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            img.getRGB(0, y, w, 1, row, 0, w);
+            convertRow(row, 0, w, threshold, out, y * stride);
+        }
+    }
+
+    /**
+     * @return the cell value of an ARGB pixel
+     */
+    public static int toCell(int argb, int alphaThreshold) {
+        return (argb >>> 24) < alphaThreshold ? PixelBuffer.TRANSPARENT : argb | 0xFF000000;
+    }
+
+    private static void convertRow(int[] src, int from, int w, int threshold, int[] out, int o) {
+        for (int x = 0; x < w; x++) {
+            int argb = src[from + x];
+            out[o + x] = (argb >>> 24) < threshold ? PixelBuffer.TRANSPARENT : argb | 0xFF000000;
+        }
+    }
+
+    private static void readInt(Raster raster, int w, int h, int threshold, boolean alpha, int[] out, int stride) {
+        SampleModel sm = raster.getSampleModel();
+        DataBufferInt db = (DataBufferInt) raster.getDataBuffer();
+        int[] src = db.getData();
+        int scan = ((SinglePixelPackedSampleModel) sm).getScanlineStride();
+        for (int y = 0; y < h; y++) {
+            int s = db.getOffset() + y * scan;
+            if (alpha) {
+                convertRow(src, s, w, threshold, out, y * stride);
+            } else {
+                int o = y * stride;
+                for (int x = 0; x < w; x++) out[o + x] = src[s + x] | 0xFF000000;
+            }
+        }
+    }
+
+    private static void readBytes(Raster raster, int w, int h, int threshold, int bytesPerPixel, int[] out, int stride) {
+        ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+        DataBufferByte db = (DataBufferByte) raster.getDataBuffer();
+        byte[] src = db.getData();
+        int scan = sm.getScanlineStride();
+        for (int y = 0; y < h; y++) {
+            int s = db.getOffset() + y * scan;
+            int o = y * stride;
+            if (bytesPerPixel == 4) {
+                // A, B, G, R
+                for (int x = 0; x < w; x++, s += 4) {
+                    int a = src[s] & 0xFF;
+                    out[o + x] = a < threshold ? PixelBuffer.TRANSPARENT
+                            : 0xFF000000 | (src[s + 3] & 0xFF) << 16 | (src[s + 2] & 0xFF) << 8 | (src[s + 1] & 0xFF);
+                }
+            } else {
+                // B, G, R
+                for (int x = 0; x < w; x++, s += 3) {
+                    out[o + x] = 0xFF000000 | (src[s + 2] & 0xFF) << 16 | (src[s + 1] & 0xFF) << 8 | (src[s] & 0xFF);
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps each palette entry to its cell value once, then looks up the indices row by row.
+     */
+    private static void readIndexed(BufferedImage img, boolean direct, int w, int h, int threshold, int[] out, int stride) {
+        IndexColorModel icm = (IndexColorModel) img.getColorModel();
+        int[] lut = new int[Math.max(256, icm.getMapSize())];
+        icm.getRGBs(lut);
+        for (int i = 0; i < lut.length; i++) {
+            lut[i] = i < icm.getMapSize() ? toCell(lut[i], threshold) : PixelBuffer.TRANSPARENT;
+        }
+        Raster raster = img.getRaster();
+        SampleModel sm = raster.getSampleModel();
+        if (direct && raster.getDataBuffer().getDataType() == DataBuffer.TYPE_BYTE
+                && sm instanceof ComponentSampleModel && ((ComponentSampleModel) sm).getPixelStride() == 1) {
+            // One byte per pixel (TYPE_BYTE_INDEXED)
+            DataBufferByte db = (DataBufferByte) raster.getDataBuffer();
+            byte[] src = db.getData();
+            int scan = ((ComponentSampleModel) sm).getScanlineStride();
+            for (int y = 0; y < h; y++) {
+                int s = db.getOffset() + y * scan;
+                int o = y * stride;
+                for (int x = 0; x < w; x++) out[o + x] = lut[src[s + x] & 0xFF];
+            }
+            return;
+        }
+        // Packed 1/2/4-bit pixels and other layouts: let the raster unpack a row of indices
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            raster.getSamples(0, y, w, 1, 0, row);
+            int o = y * stride;
+            for (int x = 0; x < w; x++) out[o + x] = lut[row[x]];
+        }
+    }
+}
@@ -0,0 +1,455 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Animation frame list that stores every frame as indices into one shared ColorPalette.
+ * Pixel art uses few colors, so indices are kept in the smallest width their colors fit:
+ * two cells per byte for up to 16 colors, then byte, short and finally int indices.
+ * An 8-color sprite takes an eighth of the memory of plain ARGB frames. Frames are decoded
+ * back to ARGB when get() touches them, and a small LRU cache keeps the recently used ones.
+ * Since pixels only refer to palette entries, recolor() changes a color in every frame by
+ * editing one palette entry.
+ * <p>
+ * Indices are kept in immutable TILE x TILE tiles that frames share copy-on-write: a copied
+ * frame shares all of its tiles, and storing an edited frame only allocates the tiles that
+ * differ from the frame it replaces (or, for a new frame, from the frame before it).
+ * Tiles of a single color are stored as just their index.
+ */
+public class IndexedFrameList extends AbstractList<AnimationFrame> implements RandomAccess {
+    public static final int DEFAULT_CACHED_FRAMES = 8;
+    /** Edge length of a tile in cells. */
+    public static final int TILE = 16;
+
+    // Source of frame versions, unique across all lists so versions can key shared caches
+    private static final AtomicLong nextVersion = new AtomicLong();
+
+    private final ColorPalette palette;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<Entry, AnimationFrame> cache;
+    private final int[] scratch = new int[TILE * TILE]; // Indices of the tile being encoded
+
+    /**
+     * One encoded frame: its tiles in row-major order. A tile is an Integer when all its
+     * cells have one index, otherwise a long[] of 4-bit indices, a byte[], a short[] or an
+     * int[], depending on the largest index it uses. Tiles are never modified once built.
+     * The version changes whenever the frame's colors may have changed.
+     */
+    private static final class Entry {
+        final int width, height;
+        final Object[] tiles;
+        int delay;
+        long version;
+
+        Entry(int width, int height, Object[] tiles, int delay, long version) {
+            this.width = width;
+            this.height = height;
+            this.tiles = tiles;
+            this.delay = delay;
+            this.version = version;
+        }
+
+        Entry(int width, int height, Object[] tiles, int delay) {
+            this(width, height, tiles, delay, newVersion());
+        }
+    }
+
+    /**
+     * @return a frame version no frame of any list has had before, for lists that key
+     *         caches through versionKey()
+     */
+    static long newVersion() {
+        return nextVersion.incrementAndGet();
+    }
+
+    public IndexedFrameList() {
+        this(new ColorPalette());
+        // Index 0 is always the transparent cell
+        palette.add(PixelBuffer.TRANSPARENT);
+    }
+
+    private IndexedFrameList(ColorPalette palette) {
+        this.palette = palette;
+        // Inside the LinkedHashMap subclass, a bare Entry would mean LinkedHashMap.Entry on Java 8
+        this.cache = new LinkedHashMap<IndexedFrameList.Entry, AnimationFrame>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<IndexedFrameList.Entry, AnimationFrame> eldest) {
+                if (size() <= DEFAULT_CACHED_FRAMES) return false;
+                // Keep delay edits made on the evicted frame
+                eldest.getKey().delay = eldest.getValue().delay;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Copies the frames of another list.
+     */
+    public IndexedFrameList(List<AnimationFrame> frames) {
+        this();
+        for (AnimationFrame af : frames) add(af.data, af.delay);
+    }
+
+    @Override
+    public synchronized AnimationFrame get(int index) {
+        Entry e = entries.get(index);
+        AnimationFrame af = cache.get(e);
+        if (af == null) {
+            af = AnimationFrame.wrap(new PixelBuffer(e.width, e.height, decode(e)), e.delay);
+            cache.put(e, af);
+        }
+        return af;
+    }
+
+    @Override
+    public synchronized int size() { return entries.size(); }
+
+    /**
+     * Replaces a frame. Storing a frame with the same pixels and delay keeps the old entry,
+     * so its version and any renderings cached under it stay valid.
+     * @return the previous frame if it was decoded, otherwise null; it is not decoded just
+     *         to be returned
+     */
+    @Override
+    public synchronized AnimationFrame set(int index, AnimationFrame frame) {
+        Entry old = entries.get(index);
+        AnimationFrame cached = cache.get(old);
+        int oldDelay = cached != null ? cached.delay : old.delay;
+        Entry e = encode(frame.data, frame.delay, old);
+        if (e.version == old.version && frame.delay == oldDelay) return cached;
+        entries.set(index, e);
+        cache.remove(old);
+        return cached;
+    }
+
+    @Override
+    public synchronized void add(int index, AnimationFrame frame) {
+        entries.add(index, encode(frame.data, frame.delay, neighbour(index)));
+        modCount++;
+    }
+
+    /**
+     * Appends a frame without the intermediate AnimationFrame copy.
+     */
+    public synchronized void add(PixelBuffer pixels, int delay) {
+        entries.add(encode(pixels, delay, neighbour(entries.size())));
+        modCount++;
+    }
+
+    /**
+     * Inserts a copy of a frame that shares all of its tiles, without decoding it.
+     * @param index frame to copy
+     * @param at position of the copy
+     * @param delay delay of the copy
+     */
+    public synchronized void addCopy(int index, int at, int delay) {
+        Entry e = entries.get(index);
+        // Same pixels, so the copy keeps the version and shares cached renderings too
+        entries.add(at, new Entry(e.width, e.height, e.tiles, delay, e.version));
+        modCount++;
+    }
+
+    /**
+     * Returns a copy of the list that later edits to this one do not affect. Tiles are
+     * immutable, so the copy shares them and only duplicates the palette and frame table.
+     */
+    public synchronized IndexedFrameList snapshot() {
+        IndexedFrameList copy = new IndexedFrameList(palette.copy());
+        for (Entry e : entries) {
+            AnimationFrame af = cache.get(e);
+            copy.entries.add(new Entry(e.width, e.height, e.tiles, af != null ? af.delay : e.delay, e.version));
+        }
+        return copy;
+    }
+
+    /**
+     * @return an id that changes whenever the frame's pixels may have changed
+     */
+    public synchronized long getVersion(int index) {
+        return entries.get(index).version;
+    }
+
+    /**
+     * @return a frame's delay, without decoding the frame
+     */
+    public synchronized int getDelay(int index) {
+        Entry e = entries.get(index);
+        AnimationFrame af = cache.get(e);
+        return af != null ? af.delay : e.delay;
+    }
+
+    /**
+     * Decodes a frame into a new buffer the caller may modify. Unlike get(), this neither
+     * fills the cache nor needs a defensive copy.
+     */
+    public synchronized PixelBuffer copyPixels(int index) {
+        Entry e = entries.get(index);
+        AnimationFrame af = cache.get(e);
+        return af != null ? af.data.copy() : new PixelBuffer(e.width, e.height, decode(e));
+    }
+
+    // New frames are most likely edited copies of the frame before them
+    private Entry neighbour(int index) {
+        if (index > 0) return entries.get(index - 1);
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    @Override
+    public synchronized AnimationFrame remove(int index) {
+        AnimationFrame old = get(index);
+        cache.remove(entries.remove(index));
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        cache.clear();
+        modCount++;
+    }
+
+    @Override
+    public Iterator<AnimationFrame> iterator() {
+        // Index-based so iterating decodes frames one at a time
+        return new Iterator<AnimationFrame>() {
+            private int next = 0;
+            @Override public boolean hasNext() { return next < size(); }
+            @Override public AnimationFrame next() { return get(next++); }
+        };
+    }
+
+    /**
+     * Replaces a color in every frame by editing its palette entry.
+     * @param from packed color to replace
+     * @param to packed replacement color
+     * @return true if any frame could contain the color
+     */
+    public synchronized boolean recolor(int from, int to) {
+        if (from == to || from == PixelBuffer.TRANSPARENT || palette.indexOf(from) < 0) return false;
+        // Cached frames hold the old colors; drop them, keeping their delays
+        for (Map.Entry<Entry, AnimationFrame> c : cache.entrySet()) c.getKey().delay = c.getValue().delay;
+        cache.clear();
+        // An earlier recolor can leave the color at more than one index
+        for (int i = 1; i < palette.size(); i++) {
+            if (palette.get(i) == from) palette.set(i, to);
+        }
+        for (Entry e : entries) e.version = newVersion();
+        return true;
+    }
+
+    /**
+     * Replaces a color in every frame of any frame list: through the palette for an
+     * IndexedFrameList, pixel by pixel otherwise.
+     * @return true if any frame could contain the color
+     */
+    public static boolean recolor(List<AnimationFrame> frames, int from, int to) {
+        if (frames instanceof IndexedFrameList) return ((IndexedFrameList) frames).recolor(from, to);
+        if (from == to || from == PixelBuffer.TRANSPARENT) return false;
+        boolean changed = false;
+        for (int i = 0; i < frames.size(); i++) {
+            AnimationFrame af = frames.get(i);
+            int[] pixels = af.data.getPixels();
+            boolean found = false;
+            for (int p = 0; p < pixels.length && !found; p++) found = pixels[p] == from;
+            if (!found) continue;
+            PixelBuffer copy = af.data.copy();
+            int[] out = copy.getPixels();
+            for (int p = 0; p < out.length; p++) if (out[p] == from) out[p] = to;
+            frames.set(i, AnimationFrame.wrap(copy, af.delay));
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Inserts a copy of a frame into any frame list, sharing its tiles if the list is an
+     * IndexedFrameList.
+     */
+    public static void addCopy(List<AnimationFrame> frames, int index, int at, int delay) {
+        if (frames instanceof IndexedFrameList) {
+            ((IndexedFrameList) frames).addCopy(index, at, delay);
+        } else {
+            frames.add(at, new AnimationFrame(frames.get(index).data, delay));
+        }
+    }
+
+    /**
+     * Returns a key for caching something derived from a frame's pixels. It stays equal
+     * until the frame is edited: the frame version for an IndexedFrameList or a
+     * MappedFrameList, otherwise the frame object itself, since frames are edited by
+     * replacing them in the list. Those two lists decode frames into new objects whenever
+     * they drop out of their small caches, so the object would not do for them.
+     */
+    public static Object versionKey(List<AnimationFrame> frames, int index) {
+        if (frames instanceof IndexedFrameList) return ((IndexedFrameList) frames).getVersion(index);
+        if (frames instanceof MappedFrameList) return ((MappedFrameList) frames).getVersion(index);
+        return frames.get(index);
+    }
+
+    /**
+     * Returns a copy of any frame list that later edits to it do not affect, e.g. for a
+     * background export while the editor stays usable. Frames are not decoded or paged in.
+     * A copy of a MappedFrameList keeps the mapped file open until the copy is closed.
+     */
+    public static List<AnimationFrame> snapshot(List<AnimationFrame> frames) {
+        if (frames instanceof IndexedFrameList) return ((IndexedFrameList) frames).snapshot();
+        if (frames instanceof MappedFrameList) return ((MappedFrameList) frames).snapshot();
+        // Frames are edited by replacing them, so their buffers can be shared
+        List<AnimationFrame> copy = new ArrayList<>(frames.size());
+        for (AnimationFrame af : frames) copy.add(AnimationFrame.wrap(af.data, af.delay));
+        return copy;
+    }
+
+    /**
+     * @return a frame's delay from any frame list, without decoding an indexed frame or
+     *         paging in a mapped one
+     */
+    public static int delay(List<AnimationFrame> frames, int index) {
+        if (frames instanceof IndexedFrameList) return ((IndexedFrameList) frames).getDelay(index);
+        if (frames instanceof MappedFrameList) return ((MappedFrameList) frames).getDelay(index);
+        return frames.get(index).delay;
+    }
+
+    /**
+     * @return a modifiable copy of a frame's pixels from any frame list
+     */
+    public static PixelBuffer copyPixels(List<AnimationFrame> frames, int index) {
+        if (frames instanceof IndexedFrameList) return ((IndexedFrameList) frames).copyPixels(index);
+        if (frames instanceof MappedFrameList) return ((MappedFrameList) frames).copyPixels(index);
+        return frames.get(index).data.copy();
+    }
+
+    /**
+     * @return number of palette entries, including transparent
+     */
+    public synchronized int getPaletteSize() { return palette.size(); }
+
+    /**
+     * @return bytes held by the encoded frames, counting shared tiles once and leaving out
+     *         tile tables, object headers and the decoded cache
+     */
+    public synchronized long getStorageBytes() {
+        long bytes = 4L * palette.size();
+        Map<Object, Boolean> seen = new IdentityHashMap<>();
+        for (Entry e : entries) {
+            for (Object tile : e.tiles) {
+                if (tile instanceof Integer || seen.put(tile, Boolean.TRUE) != null) continue;
+                if (tile instanceof long[]) bytes += 8L * ((long[]) tile).length;
+                else if (tile instanceof byte[]) bytes += ((byte[]) tile).length;
+                else if (tile instanceof short[]) bytes += 2L * ((short[]) tile).length;
+                else bytes += 4L * ((int[]) tile).length;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Encodes a frame tile by tile. Tiles that match the basis frame's tile at the same
+     * position are shared with it instead of stored again; if all of them match, the
+     * frame has the basis frame's pixels and keeps its version.
+     */
+    private Entry encode(PixelBuffer pixels, int delay, Entry basis) {
+        int w = pixels.getWidth(), h = pixels.getHeight();
+        int[] src = pixels.getPixels();
+        int tilesX = (w + TILE - 1) / TILE, tilesY = (h + TILE - 1) / TILE;
+        Object[] tiles = new Object[tilesX * tilesY];
+        boolean reuse = basis != null && basis.width == w && basis.height == h;
+        boolean unchanged = reuse;
+        int last = PixelBuffer.TRANSPARENT, lastIndex = 0;
+        for (int ty = 0, t = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++, t++) {
+                int x0 = tx * TILE, y0 = ty * TILE;
+                int tw = Math.min(TILE, w - x0), th = Math.min(TILE, h - y0);
+                int n = 0, max = 0;
+                boolean uniform = true;
+                for (int y = y0; y < y0 + th; y++) {
+                    for (int i = y * w + x0, end = i + tw; i < end; i++) {
+                        int argb = src[i];
+                        // Runs of one color are common, so skip the table lookup for repeats
+                        if (argb != last) {
+                            last = argb;
+                            lastIndex = palette.add(argb);
+                        }
+                        if (lastIndex > max) max = lastIndex;
+                        if (n > 0 && lastIndex != scratch[0]) uniform = false;
+                        scratch[n++] = lastIndex;
+                    }
+                }
+                if (reuse && sameTile(basis.tiles[t], n)) {
+                    tiles[t] = basis.tiles[t];
+                } else {
+                    tiles[t] = uniform ? Integer.valueOf(scratch[0]) : packTile(n, max);
+                    unchanged = false;
+                }
+            }
+        }
+        if (unchanged) return new Entry(w, h, basis.tiles, delay, basis.version);
+        return new Entry(w, h, tiles, delay);
+    }
+
+    /**
+     * @return the first n scratch indices in the smallest array type that holds max
+     */
+    private Object packTile(int n, int max) {
+        if (max < 16) {
+            long[] nibbles = new long[(n + 15) / 16];
+            for (int i = 0; i < n; i++) nibbles[i >> 4] |= (long) scratch[i] << ((i & 15) << 2);
+            return nibbles;
+        }
+        if (max < 256) {
+            byte[] bytes = new byte[n];
+            for (int i = 0; i < n; i++) bytes[i] = (byte) scratch[i];
+            return bytes;
+        }
+        if (max < 65536) {
+            short[] shorts = new short[n];
+            for (int i = 0; i < n; i++) shorts[i] = (short) scratch[i];
+            return shorts;
+        }
+        return Arrays.copyOf(scratch, n);
+    }
+
+    private boolean sameTile(Object tile, int n) {
+        for (int i = 0; i < n; i++) {
+            if (indexAt(tile, i) != scratch[i]) return false;
+        }
+        return true;
+    }
+
+    private static int indexAt(Object tile, int i) {
+        if (tile instanceof Integer) return (Integer) tile;
+        if (tile instanceof long[]) return (int) (((long[]) tile)[i >> 4] >>> ((i & 15) << 2)) & 0x0F;
+        if (tile instanceof byte[]) return ((byte[]) tile)[i] & 0xFF;
+        if (tile instanceof short[]) return ((short[]) tile)[i] & 0xFFFF;
+        return ((int[]) tile)[i];
+    }
+
+    private int[] decode(Entry e) {
+        int w = e.width, h = e.height;
+        int[] colors = palette.toArray();
+        int[] out = new int[w * h];
+        int tilesX = (w + TILE - 1) / TILE;
+        for (int t = 0; t < e.tiles.length; t++) {
+            int x0 = (t % tilesX) * TILE, y0 = (t / tilesX) * TILE;
+            int tw = Math.min(TILE, w - x0), th = Math.min(TILE, h - y0);
+            Object tile = e.tiles[t];
+            if (tile instanceof Integer) {
+                int argb = colors[(Integer) tile];
+                for (int y = y0; y < y0 + th; y++) Arrays.fill(out, y * w + x0, y * w + x0 + tw, argb);
+                continue;
+            }
+            for (int y = y0, i = 0; y < y0 + th; y++) {
+                for (int o = y * w + x0, end = o + tw; o < end; o++, i++) out[o] = colors[indexAt(tile, i)];
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,307 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Animation frame list backed by a memory-mapped project file in the stored .pam layout.
+ * Each frame is a fixed-size run of ARGB ints in the file; it is mapped with
+ * FileChannel.map and only paged onto the heap when get() touches it. A small LRU cache
+ * keeps recently used frames; frames replaced or added through the List API live on the
+ * heap, so the mapped file itself is never written.
+ */
+public class MappedFrameList extends AbstractList<AnimationFrame> implements RandomAccess, Closeable {
+    public static final int DEFAULT_CACHED_FRAMES = 8;
+
+    private final File file;
+    private final SharedChannel shared;
+    private final FileChannel channel;
+    private boolean closed;
+    private final int cols, rows;
+    private final long frameBytes;
+    private final List<Entry> entries;
+    private final Map<Entry, AnimationFrame> cache;
+
+    /**
+     * One position in the list: either a slot in the mapped file or a frame on the heap.
+     * Entries are replaced, never changed, when a frame is stored, so the version identifies
+     * the pixels however often the frame is paged in again.
+     */
+    private static final class Entry {
+        final long offset;
+        final long version;
+        int delay;
+        IntBuffer view;
+        AnimationFrame heapFrame;
+
+        Entry(long offset, int delay) {
+            this.offset = offset;
+            this.version = IndexedFrameList.newVersion();
+            this.delay = delay;
+        }
+
+        Entry(AnimationFrame frame) {
+            this.offset = -1;
+            this.version = IndexedFrameList.newVersion();
+            this.heapFrame = frame;
+        }
+
+        Entry(Entry e, int delay) {
+            this.offset = e.offset;
+            this.version = e.version;
+            this.delay = delay;
+            this.view = e.view;
+            this.heapFrame = e.heapFrame == null ? null : AnimationFrame.wrap(e.heapFrame.data, e.heapFrame.delay);
+        }
+    }
+
+    /**
+     * The open project file, shared by a list and its snapshots. It is closed, and a
+     * temporary copy deleted, once the last of them is closed.
+     */
+    private static final class SharedChannel {
+        final File file;
+        final FileChannel channel;
+        final boolean deleteOnClose;
+        private int users = 1;
+
+        SharedChannel(File file, FileChannel channel, boolean deleteOnClose) {
+            this.file = file;
+            this.channel = channel;
+            this.deleteOnClose = deleteOnClose;
+        }
+
+        synchronized void retain() {
+            users++;
+        }
+
+        synchronized void release() throws IOException {
+            if (--users > 0) return;
+            channel.close();
+            if (deleteOnClose) file.delete();
+        }
+    }
+
+    /**
+     * Maps the frames of a stored project file.
+     * @param file the project file
+     * @param cols frame width
+     * @param rows frame height
+     * @param firstFrameOffset byte offset of the first frame's pixels
+     * @param delays delay of each frame in milliseconds
+     * @param deleteOnClose whether the file is a temporary copy to delete in close()
+     * @throws IOException if the file cannot be opened or is too short
+     */
+    public MappedFrameList(File file, int cols, int rows, long firstFrameOffset, int[] delays,
+                           boolean deleteOnClose) throws IOException {
+        this.file = file;
+        this.cols = cols;
+        this.rows = rows;
+        this.frameBytes = 4L * cols * rows;
+        this.channel = new RandomAccessFile(file, "r").getChannel();
+        if (channel.size() < firstFrameOffset + frameBytes * delays.length) {
+            channel.close();
+            throw new IOException("Project file is truncated");
+        }
+        this.shared = new SharedChannel(file, channel, deleteOnClose);
+        this.entries = new ArrayList<>(delays.length);
+        for (int i = 0; i < delays.length; i++) {
+            entries.add(new Entry(firstFrameOffset + i * frameBytes, delays[i]));
+        }
+        this.cache = newCache();
+    }
+
+    // A view of another list's file with its own frame table; see snapshot()
+    private MappedFrameList(MappedFrameList source, List<Entry> entries) {
+        this.file = source.file;
+        this.shared = source.shared;
+        this.channel = source.channel;
+        shared.retain();
+        this.cols = source.cols;
+        this.rows = source.rows;
+        this.frameBytes = source.frameBytes;
+        this.entries = entries;
+        this.cache = newCache();
+    }
+
+    private Map<Entry, AnimationFrame> newCache() {
+        // Inside the LinkedHashMap subclass, a bare Entry would mean LinkedHashMap.Entry on Java 8
+        return new LinkedHashMap<MappedFrameList.Entry, AnimationFrame>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<MappedFrameList.Entry, AnimationFrame> eldest) {
+                if (size() <= DEFAULT_CACHED_FRAMES) return false;
+                // Keep delay edits made on the evicted frame
+                eldest.getKey().delay = eldest.getValue().delay;
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public synchronized AnimationFrame get(int index) {
+        Entry e = entries.get(index);
+        if (e.heapFrame != null) return e.heapFrame;
+        AnimationFrame af = cache.get(e);
+        if (af == null) {
+            af = pageIn(e);
+            cache.put(e, af);
+        }
+        return af;
+    }
+
+    private AnimationFrame pageIn(Entry e) {
+        PixelBuffer buffer = new PixelBuffer(cols, rows);
+        view(e).get(buffer.getPixels());
+        return AnimationFrame.wrap(buffer, e.delay);
+    }
+
+    // The mapped pixels of a file entry, positioned at the first one
+    private IntBuffer view(Entry e) {
+        try {
+            if (e.view == null) {
+                e.view = channel.map(FileChannel.MapMode.READ_ONLY, e.offset, frameBytes).asIntBuffer();
+            }
+            IntBuffer view = e.view.duplicate();
+            view.rewind();
+            return view;
+        } catch (IOException ex) {
+            throw new IllegalStateException("Cannot read frame from " + file + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public synchronized int size() { return entries.size(); }
+
+    /**
+     * @return an id that changes whenever the frame's pixels may have changed
+     */
+    public synchronized long getVersion(int index) {
+        return entries.get(index).version;
+    }
+
+    /**
+     * Reads a frame into a new buffer the caller may modify. Unlike get(), this leaves the
+     * cache alone, so reading many frames once does not evict the ones being worked on.
+     */
+    public synchronized PixelBuffer copyPixels(int index) {
+        Entry e = entries.get(index);
+        AnimationFrame af = e.heapFrame != null ? e.heapFrame : cache.get(e);
+        if (af != null) return af.data.copy();
+        PixelBuffer buffer = new PixelBuffer(cols, rows);
+        view(e).get(buffer.getPixels());
+        return buffer;
+    }
+
+    /**
+     * @return a frame's delay, without paging the frame in
+     */
+    public synchronized int getDelay(int index) {
+        Entry e = entries.get(index);
+        if (e.heapFrame != null) return e.heapFrame.delay;
+        AnimationFrame af = cache.get(e);
+        return af != null ? af.delay : e.delay;
+    }
+
+    /**
+     * Replaces a frame. Storing a frame with the same pixels and delay keeps the old entry,
+     * so its version and any renderings cached under it stay valid.
+     * @return the previous frame if it was on the heap, otherwise null; it is not paged in
+     *         just to be returned
+     */
+    @Override
+    public synchronized AnimationFrame set(int index, AnimationFrame frame) {
+        Entry old = entries.get(index);
+        AnimationFrame current = old.heapFrame != null ? old.heapFrame : cache.get(old);
+        int oldDelay = current != null ? current.delay : old.delay;
+        if (frame.delay == oldDelay && samePixels(old, current, frame.data)) return current;
+        entries.set(index, new Entry(frame));
+        cache.remove(old);
+        return current;
+    }
+
+    // Compares against the heap copy if there is one, otherwise straight against the mapped file
+    private boolean samePixels(Entry e, AnimationFrame current, PixelBuffer pixels) {
+        if (current != null) {
+            PixelBuffer data = current.data;
+            return data.getWidth() == pixels.getWidth() && data.getHeight() == pixels.getHeight()
+                    && Arrays.equals(data.getPixels(), pixels.getPixels());
+        }
+        if (pixels.getWidth() != cols || pixels.getHeight() != rows) return false;
+        return view(e).equals(IntBuffer.wrap(pixels.getPixels()));
+    }
+
+    @Override
+    public synchronized void add(int index, AnimationFrame frame) {
+        entries.add(index, new Entry(frame));
+        modCount++;
+    }
+
+    @Override
+    public synchronized AnimationFrame remove(int index) {
+        AnimationFrame old = get(index);
+        cache.remove(entries.remove(index));
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        cache.clear();
+        modCount++;
+    }
+
+    @Override
+    public Iterator<AnimationFrame> iterator() {
+        // Index-based so iterating pages frames in one at a time
+        return new Iterator<AnimationFrame>() {
+            private int next = 0;
+            @Override public boolean hasNext() { return next < size(); }
+            @Override public AnimationFrame next() { return get(next++); }
+        };
+    }
+
+    /**
+     * Returns a copy of the list that later edits to this one do not affect. It reads the
+     * same mapped file, which stays open until both lists are closed, so close the copy
+     * when done with it.
+     */
+    public synchronized MappedFrameList snapshot() {
+        List<Entry> copy = new ArrayList<>(entries.size());
+        for (Entry e : entries) {
+            AnimationFrame cached = cache.get(e);
+            copy.add(new Entry(e, cached != null ? cached.delay : e.delay));
+        }
+        return new MappedFrameList(this, copy);
+    }
+
+    /**
+     * @return number of frames currently held on the heap (edited plus cached)
+     */
+    public synchronized int getResidentFrameCount() {
+        int n = cache.size();
+        for (Entry e : entries) if (e.heapFrame != null) n++;
+        return n;
+    }
+
+    /**
+     * Releases the file channel once no snapshot still reads it; heap frames stay usable but
+     * mapped ones can no longer be paged in.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        shared.release();
+    }
+}
@@ -0,0 +1,145 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Composite of the frames around the current one, drawn faintly under it while animating.
+ * Frames before the current one are tinted with one color and frames after it with another;
+ * the nearest frames are the most opaque. The composite is one image with a pixel per cell,
+ * built from the neighbours' IndexedFrameList.versionKey values and reused until one of
+ * them, the current frame index or a setting changes, so painting costs one drawImage.
+ */
+public class OnionSkin {
+    public static final int MAX_FRAMES = 5;
+    private static final int TINT_AMOUNT = 128; // out of 256: how far cell colors move toward the tint
+
+    private boolean enabled = false;
+    private int frameCount = 1;     // frames shown on each side
+    private int opacity = 102;      // alpha (0-255) of the nearest frames, 40%
+    private boolean tinted = true;
+    private int beforeTint = 0xFFFF3C3C;
+    private int afterTint = 0xFF3C78FF;
+
+    // Cached composite and what it was built from
+    private BufferedImage composite;
+    private Object[] builtKeys = new Object[0];
+    private int builtCurrent = -1;
+    private boolean stale = true;
+
+    public boolean isEnabled() { return enabled; }
+    public int getFrameCount() { return frameCount; }
+    public int getOpacity() { return opacity; }
+    public boolean isTinted() { return tinted; }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        stale = true;
+    }
+
+    /**
+     * @param frameCount frames shown on each side of the current one, 1 to MAX_FRAMES
+     */
+    public void setFrameCount(int frameCount) {
+        this.frameCount = Math.max(1, Math.min(MAX_FRAMES, frameCount));
+        stale = true;
+    }
+
+    /**
+     * @param opacity alpha (0-255) of the frames next to the current one
+     */
+    public void setOpacity(int opacity) {
+        this.opacity = Math.max(0, Math.min(255, opacity));
+        stale = true;
+    }
+
+    public void setTinted(boolean tinted) {
+        this.tinted = tinted;
+        stale = true;
+    }
+
+    /**
+     * @param before tint of the frames before the current one
+     * @param after tint of the frames after it
+     */
+    public void setTints(Color before, Color after) {
+        this.beforeTint = before.getRGB();
+        this.afterTint = after.getRGB();
+        stale = true;
+    }
+
+    /**
+     * Returns the composite for the current frame, rebuilding it only if a neighbouring
+     * frame, the current index or a setting changed since the last call.
+     * @param frames the animation frames
+     * @param current index of the frame being edited
+     * @param cols canvas width in cells
+     * @param rows canvas height in cells
+     * @return a cols x rows image, or null when onion skinning is off or has nothing to show
+     */
+    public BufferedImage get(List<AnimationFrame> frames, int current, int cols, int rows) {
+        if (!enabled || frames.size() < 2 || current < 0 || current >= frames.size()) return null;
+        Object[] keys = new Object[2 * frameCount];
+        for (int d = 1; d <= frameCount; d++) {
+            if (current - d >= 0) keys[2 * d - 2] = IndexedFrameList.versionKey(frames, current - d);
+            if (current + d < frames.size()) keys[2 * d - 1] = IndexedFrameList.versionKey(frames, current + d);
+        }
+        if (!stale && current == builtCurrent && composite != null && composite.getWidth() == cols
+                && composite.getHeight() == rows && Arrays.equals(keys, builtKeys)) {
+            return composite;
+        }
+        build(frames, current, cols, rows);
+        builtKeys = keys;
+        builtCurrent = current;
+        stale = false;
+        return composite;
+    }
+
+    private void build(List<AnimationFrame> frames, int current, int cols, int rows) {
+        if (composite == null || composite.getWidth() != cols || composite.getHeight() != rows) {
+            composite = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_ARGB);
+        }
+        int[] out = FrameRasterizer.pixels(composite);
+        Arrays.fill(out, PixelBuffer.TRANSPARENT);
+        // Farthest first, so nearer frames end up on top
+        for (int d = frameCount; d >= 1; d--) {
+            int alpha = opacity * (frameCount - d + 1) / frameCount;
+            if (current - d >= 0) blend(frames.get(current - d).data, beforeTint, alpha, out, cols, rows);
+            if (current + d < frames.size()) blend(frames.get(current + d).data, afterTint, alpha, out, cols, rows);
+        }
+    }
+
+    /**
+     * Draws a frame's opaque cells over the composite (source-over, non-premultiplied).
+     */
+    private void blend(PixelBuffer frame, int tint, int alpha, int[] out, int cols, int rows) {
+        if (alpha <= 0) return;
+        int[] src = frame.getPixels();
+        int fw = frame.getWidth();
+        int w = Math.min(cols, fw), h = Math.min(rows, frame.getHeight());
+        int tr = (tint >> 16) & 0xFF, tg = (tint >> 8) & 0xFF, tb = tint & 0xFF;
+        int k = tinted ? TINT_AMOUNT : 0;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0, s = y * fw, o = y * cols; x < w; x++, s++, o++) {
+                int c = src[s];
+                if (c == PixelBuffer.TRANSPARENT) continue;
+                int r = (((c >> 16) & 0xFF) * (256 - k) + tr * k) >> 8;
+                int g = (((c >> 8) & 0xFF) * (256 - k) + tg * k) >> 8;
+                int b = ((c & 0xFF) * (256 - k) + tb * k) >> 8;
+                int d = out[o];
+                int da = d >>> 24;
+                if (da == 0) {
+                    out[o] = alpha << 24 | r << 16 | g << 8 | b;
+                    continue;
+                }
+                // outA = a + da * (1 - a); colors weighted by their share of outA
+                int dw = da * (255 - alpha) / 255;
+                int oa = alpha + dw;
+                r = (r * alpha + ((d >> 16) & 0xFF) * dw) / oa;
+                g = (g * alpha + ((d >> 8) & 0xFF) * dw) / oa;
+                b = (b * alpha + (d & 0xFF) * dw) / oa;
+                out[o] = oa << 24 | r << 16 | g << 8 | b;
+            }
+        }
+    }
+}
@@ -1,5 +1,4 @@
 import javax.imageio.ImageIO;
-import javax.imageio.stream.ImageOutputStream;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.event.ChangeListener;
@@ -10,7 +9,8 @@ import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Stack;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 class CustomColor {
     String name;
@@ -33,9 +33,10 @@ public class PixelArtMaker {
     private JButton redoBtn;
     private List<CustomColor> customPalette = new ArrayList<>();
     private int backgroundMode = 0; // 0=white, 1=black, 2=transparent
+    private String ffmpegPath = System.getProperty("pixelartmaker.ffmpeg", "ffmpeg");
     
     // Drawing tools
-    private int currentTool = 0; // 0=pencil, 1=line, 2=rectangle, 3=oval, 4=triangle, 5=filled rect, 6=filled oval
+    private int currentTool = 0; // 0=pencil, 1=line, 2=rectangle, 3=oval, 4=triangle, 5=filled rect, 6=filled oval, 7=bucket fill
     private JButton[] toolButtons;
     
     // Theme
@@ -51,12 +52,21 @@ public class PixelArtMaker {
     private JPanel animationPanel;
     private JButton animationBtn;
     private JLabel frameIndicatorLabel;
+    private FrameTimeline frameTimeline;
+    private JScrollPane animationCanvasScroll;
+    private JSpinner frameDelaySpinner;
+    private JSpinner loopDelaySpinner;
+    private boolean syncingAnimationPanel = false; // set while updateAnimationPanel writes the controls
     private JSplitPane splitPane;
     private boolean isAnimationMode = false;
     private int animationCurrentFrameIndex = 0;
     private int animationLoopDelay = 0; // Delay before repeating animation
 
     public static void main(String[] args) {
+        if (args.length > 0) {
+            // Arguments mean a batch conversion; see BatchConverter for the options
+            System.exit(BatchConverter.run(args));
+        }
         SwingUtilities.invokeLater(() -> new PixelArtMaker().createAndShow());
     }
 
@@ -99,10 +109,11 @@ public class PixelArtMaker {
         
         // Callback to update button states
         canvas.setUndoRedoCallback(() -> {
-            undoBtn.setEnabled(canvas.canUndo());
-            redoBtn.setEnabled(canvas.canRedo());
+            updateUndoRedoButtons();
             hasUnsavedChanges = true; // Mark as unsaved
         }); //by @mc.zminecrafter_18 on Instagram, Zmc18-Robotics on Github
+        // Switching frames drops the history without changing the project
+        canvas.setHistoryResetCallback(this::updateUndoRedoButtons);
 
         JButton savePngBtn = new JButton("Save PNG");
         savePngBtn.addActionListener(e -> saveAsPNG());
@@ -277,8 +288,10 @@ public class PixelArtMaker {
     }
     
     private void editCustomColor(CustomColor cc, JButton btn) {
-        JPanel p = new JPanel(new GridLayout(2, 2, 5, 5));
+        JPanel p = new JPanel(new GridLayout(3, 2, 5, 5));
         JTextField nameField = new JTextField(cc.name, 15);
+        JCheckBox recolorBox = new JCheckBox("Recolor pixels");
+        recolorBox.setToolTipText("Also repaint pixels drawn with this color, in every animation frame");
         JButton colorChooserBtn = new JButton("Choose Color");
         final Color[] newColor = {cc.color};
         colorChooserBtn.addActionListener(e -> {
@@ -290,9 +303,20 @@ public class PixelArtMaker {
         p.add(nameField);
         p.add(new JLabel("Color:"));
         p.add(colorChooserBtn);
+        p.add(new JLabel("Apply:"));
+        p.add(recolorBox);
         
         int res = JOptionPane.showConfirmDialog(frame, p, "Edit Color", JOptionPane.OK_CANCEL_OPTION);
         if (res == JOptionPane.OK_OPTION) {
+            int from = PixelBuffer.toArgb(cc.color), to = PixelBuffer.toArgb(newColor[0]);
+            if (recolorBox.isSelected() && from != to) {
+                // Indexed frames only need their palette entry changed
+                storeCurrentFrame();
+                IndexedFrameList.recolor(canvas.getAnimationFrames(), from, to);
+                canvas.recolor(from, to);
+                hasUnsavedChanges = true;
+                if (isAnimationMode) updateAnimationPanel();
+            }
             cc.name = nameField.getText();
             cc.color = newColor[0];
             btn.setBackground(cc.color);
@@ -300,10 +324,23 @@ public class PixelArtMaker {
         }
     }
 
+    private void updateUndoRedoButtons() {
+        undoBtn.setEnabled(canvas.canUndo());
+        redoBtn.setEnabled(canvas.canRedo());
+        undoBtn.setToolTipText(String.format("Undo (%d steps, %d KB history)",
+                canvas.getUndoCount(), canvas.getUndoMemoryUsed() / 1024));
+    }
+
     private void showSettingsDialog() {
         JSpinner colsSpinner = new JSpinner(new SpinnerNumberModel(canvas.getCols(), 1, 512, 1));
         JSpinner rowsSpinner = new JSpinner(new SpinnerNumberModel(canvas.getRows(), 1, 512, 1));
         JSpinner sizeSpinner = new JSpinner(new SpinnerNumberModel(canvas.getPixelSize(), 1, 256, 1));
+        JSpinner undoMemorySpinner = new JSpinner(new SpinnerNumberModel((int) (canvas.getUndoMemoryBudget() / (1024 * 1024)), 1, 4096, 8));
+        JSpinner alphaThresholdSpinner = new JSpinner(new SpinnerNumberModel(canvas.getImportAlphaThreshold(), 1, 255, 1));
+        alphaThresholdSpinner.setToolTipText("Image pixels with a lower alpha are loaded as transparent");
+        JSpinner fillToleranceSpinner = new JSpinner(new SpinnerNumberModel(canvas.getFillTolerance(), 0, 255, 1));
+        fillToleranceSpinner.setToolTipText("Bucket fill also covers colors differing by up to this much in each channel");
+        JCheckBox fillDiagonalCheck = new JCheckBox("Spread diagonally", canvas.isFillEightConnected());
         
         String[] bgOptions = {"White", "Black", "Transparent"};
         JComboBox<String> bgCombo = new JComboBox<>(bgOptions);
@@ -319,11 +356,15 @@ public class PixelArtMaker {
         themeGroup.add(darkTheme);
         themeGroup.add(cozyTheme);
 
-        JPanel p = new JPanel(new GridLayout(6, 2));
+        JPanel p = new JPanel(new GridLayout(9, 2));
         p.add(new JLabel("Columns:")); p.add(colsSpinner);
         p.add(new JLabel("Rows:")); p.add(rowsSpinner);
         p.add(new JLabel("Pixel size:")); p.add(sizeSpinner);
         p.add(new JLabel("Background:")); p.add(bgCombo);
+        p.add(new JLabel("Undo memory (MB):")); p.add(undoMemorySpinner);
+        p.add(new JLabel("Import alpha threshold:")); p.add(alphaThresholdSpinner);
+        p.add(new JLabel("Bucket fill tolerance:")); p.add(fillToleranceSpinner);
+        p.add(new JLabel("Bucket fill:")); p.add(fillDiagonalCheck);
         
         JPanel themePanel = new JPanel(new BorderLayout());
         themePanel.setBorder(BorderFactory.createTitledBorder("Theme"));
@@ -353,6 +394,10 @@ public class PixelArtMaker {
                 applyTheme();
             }
             
+            canvas.setUndoMemoryBudget((Integer) undoMemorySpinner.getValue() * 1024L * 1024L);
+            canvas.setImportAlphaThreshold((Integer) alphaThresholdSpinner.getValue());
+            canvas.setFillTolerance((Integer) fillToleranceSpinner.getValue());
+            canvas.setFillEightConnected(fillDiagonalCheck.isSelected());
             canvas.resizeGrid(c, r);
             canvas.setPixelSize(s);
             canvas.setBackgroundMode(backgroundMode);
@@ -410,6 +455,7 @@ public class PixelArtMaker {
         if (fc.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
             File f = fc.getSelectedFile();
             try {
+                if (offerAnimationImport(f)) return;
                 BufferedImage img = ImageIO.read(f);
                 if (img == null) throw new IOException("Unsupported image format");
                 
@@ -450,6 +496,58 @@ public class PixelArtMaker {
         }
     }
 
+    /**
+     * Offers to load an animated GIF or a numbered PNG sequence (frame_00000.png, ...)
+     * as animation frames instead of a single image.
+     * @return true if the file was handed to the animation import
+     */
+    private boolean offerAnimationImport(File f) throws IOException {
+        String name = f.getName().toLowerCase();
+        int count;
+        List<File> sequence = null;
+        if (name.endsWith(".gif")) {
+            count = AnimationImporter.countGifFrames(f);
+        } else if (name.endsWith(".png")) {
+            sequence = AnimationImporter.findPngSequence(f);
+            count = sequence.size();
+        } else {
+            return false;
+        }
+        if (count < 2) return false;
+        
+        String what = sequence == null ? "This GIF has " + count + " frames." : "This image is part of a sequence of " + count + " PNG files.";
+        String[] options = {"Import as Animation", "Load This Image Only"};
+        int choice = JOptionPane.showOptionDialog(frame, what + "\nImporting replaces the current animation frames.",
+                "Load Image", JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+        if (choice != 0) return false;
+        
+        AnimationImporter importer = new AnimationImporter();
+        importer.setAlphaThreshold(canvas.getImportAlphaThreshold());
+        List<List<AnimationFrame>> result = new ArrayList<>();
+        final List<File> files = sequence;
+        runInBackground("Importing animation...", count, progress -> {
+                    List<AnimationFrame> frames = files == null ? importer.importGif(f, progress)
+                            : importer.importPngSequence(files, progress);
+                    if (frames == null) return false;
+                    result.add(frames);
+                    return true;
+                },
+                () -> applyImportedAnimation(result.get(0)),
+                "Import cancelled.", "Error importing animation: ");
+        return true;
+    }
+    
+    private void applyImportedAnimation(List<AnimationFrame> frames) {
+        PixelBuffer first = frames.get(0).data;
+        canvas.resizeGrid(first.getWidth(), first.getHeight());
+        canvas.setAnimationFrames(frames);
+        canvas.setCurrentFrameIndex(0);
+        hasUnsavedChanges = true;
+        if (isAnimationMode) updateAnimationPanel();
+        frame.pack();
+        JOptionPane.showMessageDialog(frame, "Imported " + frames.size() + " animation frames.");
+    }
+
     private void showExportDialog() {
         String[] options = {"PNG Image", "JPG Image", "PAM Project"};
         int choice = JOptionPane.showOptionDialog(frame, "Choose export format:", "Export",
@@ -500,18 +598,25 @@ public class PixelArtMaker {
     }
     
     private void exportAsPAM(File f) throws IOException {
-        try (PrintWriter pw = new PrintWriter(f)) {
-            pw.println(canvas.getCols() + " " + canvas.getRows() + " " + canvas.getPixelSize());
-            for (int y = 0; y < canvas.getRows(); y++) {
-                StringBuilder sb = new StringBuilder();
-                for (int x = 0; x < canvas.getCols(); x++) {
-                    Color c = canvas.getColorAt(x, y);
-                    if (c == null) sb.append("#00000000");
-                    else sb.append(String.format("#%02x%02x%02x", c.getRed(), c.getGreen(), c.getBlue()));
-                    if (x < canvas.getCols()-1) sb.append(' ');
-                }
-                pw.println(sb.toString());
-            }
+        storeCurrentFrame();
+        ProjectIO.Project p = new ProjectIO.Project();
+        p.cols = canvas.getCols();
+        p.rows = canvas.getRows();
+        p.pixelSize = canvas.getPixelSize();
+        p.backgroundMode = backgroundMode;
+        p.loopDelay = animationLoopDelay;
+        p.currentFrame = canvas.getCurrentFrameIndex();
+        p.canvas = canvas.captureCurrentFrame();
+        p.frames = canvas.getAnimationFrames();
+        ProjectIO.write(f, p);
+    }
+    
+    // Writes the canvas back into the animation frame it was loaded from
+    private void storeCurrentFrame() {
+        List<AnimationFrame> frames = canvas.getAnimationFrames();
+        int idx = canvas.getCurrentFrameIndex();
+        if (idx >= 0 && idx < frames.size()) {
+            frames.set(idx, AnimationFrame.wrap(canvas.captureCurrentFrame(), frames.get(idx).delay));
         }
     }
 
@@ -520,29 +625,22 @@ public class PixelArtMaker {
         fc.setFileFilter(new FileNameExtensionFilter("Pixel project (.pam)", "pam"));
         if (fc.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
             File f = fc.getSelectedFile();
-            try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-                String header = br.readLine();
-                if (header == null) throw new IOException("Empty file");
-                String[] parts = header.trim().split("\\s+");
-                int w = Integer.parseInt(parts[0]);
-                int h = Integer.parseInt(parts[1]);
-                int s = Integer.parseInt(parts[2]);
-                Color[][] grid = new Color[h][w];
-                for (int y = 0; y < h; y++) {
-                    String line = br.readLine();
-                    if (line == null) throw new IOException("Unexpected EOF");
-                    String[] cols = line.trim().split("\\s+");
-                    for (int x = 0; x < w; x++) {
-                        String token = cols[x];
-                        if (token.equalsIgnoreCase("#00000000") || token.equalsIgnoreCase("null")) grid[y][x] = null;
-                        else {
-                            Color c = Color.decode(token);
-                            grid[y][x] = c;
-                        }
+            try {
+                ProjectIO.Project p = ProjectIO.read(f);
+                canvas.setGrid(p.canvas);
+                canvas.setPixelSize(p.pixelSize);
+                if (p.frames != null) {
+                    // Binary projects also carry the animation and its settings
+                    backgroundMode = p.backgroundMode;
+                    canvas.setBackgroundMode(backgroundMode);
+                    animationLoopDelay = p.loopDelay;
+                    canvas.setAnimationFrames(p.frames);
+                    List<AnimationFrame> frames = canvas.getAnimationFrames();
+                    if (!frames.isEmpty()) {
+                        canvas.setCurrentFrameIndex(Math.max(0, Math.min(p.currentFrame, frames.size() - 1)));
                     }
+                    if (isAnimationMode) updateAnimationPanel();
                 }
-                canvas.setGridFromArray(grid);
-                canvas.setPixelSize(s);
                 frame.pack();
             } catch (IOException ex) {
                 JOptionPane.showMessageDialog(frame, "Error importing: " + ex.getMessage());
@@ -558,30 +656,54 @@ public class PixelArtMaker {
     static class PixelCanvas extends JPanel implements MouseListener, MouseMotionListener {
         private int cols, rows;
         private int pixelSize;
-        private Color[][] grid;
+        private PixelBuffer grid;
         private Color currentColor = Color.BLACK;
+        private int currentArgb = PixelBuffer.toArgb(Color.BLACK);
         private String currentColorName = "Black";
         private boolean painting = false;
         private int backgroundMode = 0; // 0=white, 1=black, 2=transparent
+        private int importAlphaThreshold = ImageImporter.DEFAULT_ALPHA_THRESHOLD;
         
-        // Undo/Redo stacks
-        private Stack<Color[][]> undoStack = new Stack<>();
-        private Stack<Color[][]> redoStack = new Stack<>();
+        // Undo/Redo history (stores only changed pixels per edit)
+        private final UndoHistory history = new UndoHistory();
         private Runnable undoRedoCallback;
+        private Runnable historyResetCallback; // history cleared without editing, e.g. on a frame switch
         private PixelArtMaker.ColorChangeListener colorChangeListener;
         
         // Animation
-        private List<AnimationFrame> animationFrames = new ArrayList<>();
+        private List<AnimationFrame> animationFrames = new IndexedFrameList();
         private int currentFrameIndex = 0;
+        private final OnionSkin onionSkin = new OnionSkin();
+        private boolean showOnionSkin = false; // only while the animation editor is open
         
         // Drawing tools
-        private int drawingTool = 0; // 0=pencil, 1=line, 2=rect, 3=oval, 4=triangle, 5=fill rect, 6=fill oval
+        private int drawingTool = 0; // 0=pencil, 1=line, 2=rect, 3=oval, 4=triangle, 5=fill rect, 6=fill oval, 7=bucket
         private int startX, startY; // For shape drawing
-        private Color[][] tempGrid; // Backup for preview
+        
+        // Bucket fill
+        private final FloodFill floodFill = new FloodFill();
+        private final Rectangle fillBounds = new Rectangle();
+        private int fillTolerance = 0;             // largest per-channel difference still filled
+        private boolean fillEightConnected = false; // also spread through diagonal neighbours
+        
+        // Shape preview overlay: only the cells the shape touches, composited at paint time
+        private PixelBuffer previewLayer;
+        private int[] previewCells = new int[256]; // Indices written into previewLayer
+        private int previewCount = 0;
+        private boolean previewing = false;
+        
+        // Dirty bounding box (in cells) of the current edit, repainted as one clip
+        private int dirtyMinX = Integer.MAX_VALUE, dirtyMinY = Integer.MAX_VALUE;
+        private int dirtyMaxX = -1, dirtyMaxY = -1;
+        private final Rectangle previewBounds = new Rectangle(); // Cells covered by the last shape preview
+        
+        // Cached grid-line overlay, rebuilt when the pixel size changes
+        private TexturePaint gridPaint;
+        private int gridPaintSize;
 
         PixelCanvas(int cols, int rows, int pixelSize) {
             this.cols = cols; this.rows = rows; this.pixelSize = pixelSize;
-            this.grid = new Color[rows][cols];
+            this.grid = new PixelBuffer(cols, rows);
             setPreferredSize(new Dimension(cols * pixelSize, rows * pixelSize));
             addMouseListener(this);
             addMouseMotionListener(this);
@@ -591,8 +713,8 @@ public class PixelArtMaker {
         public int getRows() { return rows; }
         public int getPixelSize() { return pixelSize; }
         //by @mc.zminecrafter_18 on Instagram, Zmc18-Robotics on Github
-        public void setCurrentColor(Color c) { this.currentColor = c; this.currentColorName = "Custom"; }
-        public void setCurrentColor(Color c, String name) { this.currentColor = c; this.currentColorName = name; if (colorChangeListener != null) colorChangeListener.onColorChange(name, c); }
+        public void setCurrentColor(Color c) { this.currentColor = c; this.currentArgb = PixelBuffer.toArgb(c); this.currentColorName = "Custom"; }
+        public void setCurrentColor(Color c, String name) { this.currentColor = c; this.currentArgb = PixelBuffer.toArgb(c); this.currentColorName = name; if (colorChangeListener != null) colorChangeListener.onColorChange(name, c); }
         public void setColorChangeListener(PixelArtMaker.ColorChangeListener listener) { this.colorChangeListener = listener; }
 
         public void setPixelSize(int s) { this.pixelSize = s; setPreferredSize(new Dimension(cols*s, rows*s)); revalidate(); repaint(); }
@@ -600,135 +722,140 @@ public class PixelArtMaker {
         public void setBackgroundMode(int mode) { this.backgroundMode = mode; repaint(); }
         
         public void setUndoRedoCallback(Runnable cb) { this.undoRedoCallback = cb; }
+        public void setHistoryResetCallback(Runnable cb) { this.historyResetCallback = cb; }
+        
+        public void setUndoMemoryBudget(long bytes) { history.setBudget(bytes); }
+        public long getUndoMemoryBudget() { return history.getBudget(); }
+        public long getUndoMemoryUsed() { return history.getMemoryUsed(); }
+        public int getUndoCount() { return history.getUndoCount(); }
         
         public void setDrawingTool(int tool) { this.drawingTool = tool; }
         
+        public void setFillTolerance(int tolerance) { this.fillTolerance = Math.max(0, Math.min(255, tolerance)); }
+        public int getFillTolerance() { return fillTolerance; }
+        public void setFillEightConnected(boolean eight) { this.fillEightConnected = eight; }
+        public boolean isFillEightConnected() { return fillEightConnected; }
+        
         // Animation methods
         public List<AnimationFrame> getAnimationFrames() { return animationFrames; }
         
+        // Replaces the frame list, e.g. with a lazily paged MappedFrameList from a large project.
+        // Other in-memory lists are copied into palette-indexed storage.
+        public void setAnimationFrames(List<AnimationFrame> frames) {
+            if (!(frames instanceof Closeable) && !(frames instanceof IndexedFrameList)) {
+                frames = new IndexedFrameList(frames);
+            }
+            if (animationFrames instanceof Closeable && animationFrames != frames) {
+                try {
+                    ((Closeable) animationFrames).close();
+                } catch (IOException ex) {
+                    System.out.println("Could not close frame storage: " + ex.getMessage());
+                }
+            }
+            animationFrames = frames;
+        }
+        
         public void setCurrentFrameIndex(int idx) { 
             this.currentFrameIndex = idx;
             // Load frame data from animationFrames into grid
             if (idx >= 0 && idx < animationFrames.size()) {
-                Color[][] frameData = animationFrames.get(idx).data;
-                // Clear grid first, then copy frame data
-                grid = new Color[rows][cols];
-                for (int y = 0; y < rows; y++) {
-                    for (int x = 0; x < cols; x++) {
-                        if (y < frameData.length && x < frameData[0].length) {
-                            grid[y][x] = frameData[y][x];
-                        }
-                    }
-                }
+                // Decode straight into a fresh grid, resizing only if the frame size differs
+                PixelBuffer pixels = IndexedFrameList.copyPixels(animationFrames, idx);
+                grid = pixels.getWidth() == cols && pixels.getHeight() == rows ? pixels : pixels.resized(cols, rows);
             } else {
                 // Invalid index, clear grid
-                grid = new Color[rows][cols];
+                grid = new PixelBuffer(cols, rows);
             }
+            // Recorded edits describe the previous frame's pixels, not this one
+            history.clear();
+            if (historyResetCallback != null) historyResetCallback.run();
             System.out.println("Frame " + idx + " loaded");
             repaint();
         }
         
         public int getCurrentFrameIndex() { return this.currentFrameIndex; }
-        public Color[][] captureCurrentFrame() {
-            Color[][] copy = new Color[rows][cols];
-            for (int y = 0; y < rows; y++)
-                for (int x = 0; x < cols; x++)
-                    copy[y][x] = grid[y][x];
-            return copy;
+        
+        public OnionSkin getOnionSkin() { return onionSkin; }
+        public void setShowOnionSkin(boolean show) { this.showOnionSkin = show; repaint(); }
+        public PixelBuffer captureCurrentFrame() {
+            return grid.copy();
         }
 
-        public Color getColorAt(int x, int y) { return grid[y][x]; }
+        public Color getColorAt(int x, int y) { return PixelBuffer.toColor(grid.get(x, y)); }
+        public int getPixelAt(int x, int y) { return grid.get(x, y); }
 
         public void resizeGrid(int newCols, int newRows) {
-            saveToUndoStack();
-            Color[][] ng = new Color[newRows][newCols];
-            for (int y = 0; y < Math.min(rows, newRows); y++)
-                for (int x = 0; x < Math.min(cols, newCols); x++) ng[y][x] = grid[y][x];
-            this.cols = newCols; this.rows = newRows; this.grid = ng;
+            history.begin(grid);
+            this.cols = newCols; this.rows = newRows; this.grid = grid.resized(newCols, newRows);
+            commitEdit();
             setPreferredSize(new Dimension(cols*pixelSize, rows*pixelSize)); revalidate(); repaint();
         }
 
         public void clear() { 
-            saveToUndoStack();
-            grid = new Color[rows][cols]; 
-            redoStack.clear();
-            if (undoRedoCallback != null) undoRedoCallback.run();
+            history.begin(grid);
+            grid.clear();
+            commitEdit();
             repaint(); 
         }
         
-        private void saveToUndoStack() {
-            Color[][] copy = new Color[rows][cols];
-            for (int y = 0; y < rows; y++) 
-                for (int x = 0; x < cols; x++) copy[y][x] = grid[y][x];
-            undoStack.push(copy);
-            redoStack.clear();
-            if (undoRedoCallback != null) undoRedoCallback.run();
+        // Records the edit started with history.begin() as one undo step
+        private void commitEdit() {
+            if (history.commit(grid) && undoRedoCallback != null) undoRedoCallback.run();
         }
         
         public void undo() {
-            if (undoStack.isEmpty()) return;
-            Color[][] current = new Color[rows][cols];
-            for (int y = 0; y < rows; y++) 
-                for (int x = 0; x < cols; x++) current[y][x] = grid[y][x];
-            redoStack.push(current);
-            grid = undoStack.pop();
+            if (!history.canUndo()) return;
+            setBuffer(history.undo(grid));
             if (undoRedoCallback != null) undoRedoCallback.run();
             repaint();
         }
         
         public void redo() {
-            if (redoStack.isEmpty()) return;
-            Color[][] current = new Color[rows][cols];
-            for (int y = 0; y < rows; y++) 
-                for (int x = 0; x < cols; x++) current[y][x] = grid[y][x];
-            undoStack.push(current);
-            grid = redoStack.pop();
+            if (!history.canRedo()) return;
+            setBuffer(history.redo(grid));
             if (undoRedoCallback != null) undoRedoCallback.run();
             repaint();
         }
         //by @mc.zminecrafter_18 on Instagram, Zmc18-Robotics on Github
-        public boolean canUndo() { return !undoStack.isEmpty(); }
-        public boolean canRedo() { return !redoStack.isEmpty(); }
+        public boolean canUndo() { return history.canUndo(); }
+        public boolean canRedo() { return history.canRedo(); }
 
         public BufferedImage renderToImage() {
-            BufferedImage img = new BufferedImage(cols * pixelSize, rows * pixelSize, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g = img.createGraphics();
-            if (backgroundMode == 0) {
-                g.setColor(Color.WHITE);
-                g.fillRect(0, 0, img.getWidth(), img.getHeight());
-            } else if (backgroundMode == 1) {
-                g.setColor(Color.BLACK);
-                g.fillRect(0, 0, img.getWidth(), img.getHeight());
-            } else {
-                // Transparent - no fill, alpha is 0 by default
-            }
-            for (int y = 0; y < rows; y++) {
-                for (int x = 0; x < cols; x++) {
-                    Color c = grid[y][x];
-                    if (c != null) {
-                        g.setColor(c);
-                        g.fillRect(x*pixelSize, y*pixelSize, pixelSize, pixelSize);
-                    }
-                }
-            }
-            g.dispose();
-            return img;
+            return FrameRasterizer.renderImage(grid, pixelSize, FrameRasterizer.backgroundArgb(backgroundMode), null);
         }
 
         public void loadFromImage(BufferedImage img) {
-            for (int y = 0; y < rows; y++)
-                for (int x = 0; x < cols; x++) {
-                    int rgb = img.getRGB(x, y);
-                    Color c = new Color(rgb, true);
-                    if (c.getAlpha() == 0) grid[y][x] = null; else grid[y][x] = new Color(c.getRed(), c.getGreen(), c.getBlue());
-                }
+            history.begin(grid);
+            ImageImporter.read(img, importAlphaThreshold, grid);
+            commitEdit();
             repaint();
         }
+        
+        // Pixels less opaque than this are loaded as transparent cells
+        public void setImportAlphaThreshold(int alpha) { this.importAlphaThreshold = Math.max(1, Math.min(255, alpha)); }
+        public int getImportAlphaThreshold() { return importAlphaThreshold; }
 
-        public void setGridFromArray(Color[][] arr) {
-            this.rows = arr.length; this.cols = arr[0].length; this.grid = new Color[rows][cols];
-            for (int y = 0; y < rows; y++) for (int x = 0; x < cols; x++) this.grid[y][x] = arr[y][x];
-            setPreferredSize(new Dimension(cols*pixelSize, rows*pixelSize)); revalidate(); repaint();
+        // Replaces one color on the canvas as a single undo step
+        public void recolor(int from, int to) {
+            history.begin(grid);
+            int[] pixels = grid.getPixels();
+            for (int i = 0; i < pixels.length; i++) if (pixels[i] == from) pixels[i] = to;
+            commitEdit();
+            repaint();
+        }
+
+        public void setGrid(PixelBuffer buffer) {
+            history.begin(grid);
+            setBuffer(buffer.copy());
+            commitEdit();
+        }
+
+        // Swaps in a buffer (possibly of another size) without copying it
+        private void setBuffer(PixelBuffer buffer) {
+            boolean resized = buffer.getWidth() != cols || buffer.getHeight() != rows;
+            this.grid = buffer; this.cols = buffer.getWidth(); this.rows = buffer.getHeight();
+            if (resized) { setPreferredSize(new Dimension(cols*pixelSize, rows*pixelSize)); revalidate(); }
+            repaint();
         }
 
         @Override
@@ -736,37 +863,110 @@ public class PixelArtMaker {
             super.paintComponent(g);
             Graphics2D g2 = (Graphics2D) g;
 
-            // Draw current frame
-            for (int y = 0; y < rows; y++) {
-                for (int x = 0; x < cols; x++) {
-                    Color c = grid[y][x];
-                    if (c != null) {
-                        g2.setColor(c);
-                        g2.fillRect(x*pixelSize, y*pixelSize, pixelSize, pixelSize);
-                    } else {
-                        if (backgroundMode == 0) g2.setColor(Color.WHITE);
-                        else if (backgroundMode == 1) g2.setColor(Color.BLACK);
-                        else g2.setColor(new Color(200, 200, 200)); // light gray for transparent
-                        g2.fillRect(x*pixelSize, y*pixelSize, pixelSize, pixelSize);
-                    }
-                    g2.setColor(Color.LIGHT_GRAY);
-                    g2.drawRect(x*pixelSize, y*pixelSize, pixelSize, pixelSize);
+            // Only visit cells that intersect the clip (a dirty rect or the visible scroll area)
+            int x0 = 0, y0 = 0, x1 = cols - 1, y1 = rows - 1;
+            Rectangle clip = g2.getClipBounds();
+            if (clip != null) {
+                x0 = Math.max(0, (clip.x - 1) / pixelSize);
+                y0 = Math.max(0, (clip.y - 1) / pixelSize);
+                x1 = Math.min(cols - 1, (clip.x + clip.width) / pixelSize);
+                y1 = Math.min(rows - 1, (clip.y + clip.height) / pixelSize);
+            }
+
+            if (x1 < x0 || y1 < y0) return;
+            int dx0 = x0 * pixelSize, dy0 = y0 * pixelSize;
+            int dx1 = (x1 + 1) * pixelSize, dy1 = (y1 + 1) * pixelSize;
+
+            // Background behind transparent cells
+            g2.setColor(new Color(backgroundDisplayArgb()));
+            g2.fillRect(dx0, dy0, dx1 - dx0, dy1 - dy0);
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+
+            // Neighbouring frames under the current one; the composite is only rebuilt when they change
+            BufferedImage onion = showOnionSkin ? onionSkin.get(animationFrames, currentFrameIndex, cols, rows) : null;
+            if (onion != null) {
+                g2.drawImage(onion, dx0, dy0, dx1, dy1, x0, y0, x1 + 1, y1 + 1, null);
+            }
+
+            // Draw current frame: the 1:1 backing image scaled up in a single blit
+            g2.drawImage(grid.getImage(), dx0, dy0, dx1, dy1, x0, y0, x1 + 1, y1 + 1, null);
+            if (previewCount > 0) {
+                g2.drawImage(previewLayer.getImage(), dx0, dy0, dx1, dy1, x0, y0, x1 + 1, y1 + 1, null);
+            }
+
+            // Grid lines, including the closing line on the right/bottom edge
+            g2.setPaint(getGridPaint());
+            g2.fillRect(dx0, dy0, dx1 - dx0 + 1, dy1 - dy0 + 1);
+        }
+        
+        private int backgroundDisplayArgb() {
+            if (backgroundMode == 0) return 0xFFFFFFFF;
+            else if (backgroundMode == 1) return 0xFF000000;
+            else return 0xFFC8C8C8; // light gray for transparent
+        }
+        
+        // Tiled pattern with one light gray line on the top and left of a cell
+        private TexturePaint getGridPaint() {
+            if (gridPaint == null || gridPaintSize != pixelSize) {
+                BufferedImage tile = new BufferedImage(pixelSize, pixelSize, BufferedImage.TYPE_INT_ARGB);
+                int line = Color.LIGHT_GRAY.getRGB();
+                for (int i = 0; i < pixelSize; i++) {
+                    tile.setRGB(i, 0, line);
+                    tile.setRGB(0, i, line);
                 }
+                gridPaint = new TexturePaint(tile, new Rectangle(0, 0, pixelSize, pixelSize));
+                gridPaintSize = pixelSize;
             }
+            return gridPaint;
         }
 
         private void paintAt(MouseEvent e, boolean isErase) {
             int x = e.getX() / pixelSize; int y = e.getY() / pixelSize;
             if (x < 0 || x >= cols || y < 0 || y >= rows) return;
-            if (isErase) grid[y][x] = null; else grid[y][x] = currentColor;
-            repaint(x*pixelSize, y*pixelSize, pixelSize, pixelSize);
+            grid.set(x, y, isErase ? PixelBuffer.TRANSPARENT : currentArgb);
+            markDirty(x, y);
+            flushDirty();
+        }
+        
+        // Bucket fill from a cell; part of the edit begun in mousePressed
+        private void fillAt(int x, int y, boolean isErase) {
+            if (x < 0 || x >= cols || y < 0 || y >= rows) return;
+            floodFill.fill(grid, x, y, isErase ? PixelBuffer.TRANSPARENT : currentArgb,
+                    fillTolerance, fillEightConnected, fillBounds);
+            markDirty(fillBounds);
+            flushDirty();
+        }
+        
+        private void markDirty(int x, int y) {
+            if (x < dirtyMinX) dirtyMinX = x;
+            if (x > dirtyMaxX) dirtyMaxX = x;
+            if (y < dirtyMinY) dirtyMinY = y;
+            if (y > dirtyMaxY) dirtyMaxY = y;
+        }
+        
+        private void markDirty(Rectangle cells) {
+            if (cells.isEmpty()) return;
+            markDirty(cells.x, cells.y);
+            markDirty(cells.x + cells.width - 1, cells.y + cells.height - 1);
+        }
+        
+        private void dirtyBounds(Rectangle out) {
+            if (dirtyMaxX < 0) out.setBounds(0, 0, 0, 0);
+            else out.setBounds(dirtyMinX, dirtyMinY, dirtyMaxX - dirtyMinX + 1, dirtyMaxY - dirtyMinY + 1);
+        }
+        
+        // Repaints the dirty cells (plus their grid lines) and resets the box
+        private void flushDirty() {
+            if (dirtyMaxX < 0) return;
+            repaint(dirtyMinX * pixelSize, dirtyMinY * pixelSize,
+                    (dirtyMaxX - dirtyMinX + 1) * pixelSize + 1, (dirtyMaxY - dirtyMinY + 1) * pixelSize + 1);
+            dirtyMinX = dirtyMinY = Integer.MAX_VALUE;
+            dirtyMaxX = dirtyMaxY = -1;
         }
 
         @Override public void mousePressed(MouseEvent e) { 
             if (!painting) {
-                saveToUndoStack();
-                redoStack.clear();
-                if (undoRedoCallback != null) undoRedoCallback.run();
+                history.begin(grid);
             }
             painting = true;
             startX = e.getX() / pixelSize;
@@ -775,20 +975,30 @@ public class PixelArtMaker {
             if (drawingTool == 0) {
                 // Pencil - paint immediately
                 paintAt(e, SwingUtilities.isRightMouseButton(e));
+            } else if (drawingTool == 7) {
+                // Bucket - fill once on press; the release commits it as one undo step
+                fillAt(startX, startY, SwingUtilities.isRightMouseButton(e));
             } else {
-                // For shapes, save temp grid for preview
-                tempGrid = new Color[rows][cols];
-                for (int y = 0; y < rows; y++) 
-                    for (int x = 0; x < cols; x++) 
-                        tempGrid[y][x] = grid[y][x];
+                // For shapes, make sure the preview layer matches the grid
+                if (previewLayer == null || previewLayer.getWidth() != cols || previewLayer.getHeight() != rows) {
+                    previewLayer = new PixelBuffer(cols, rows);
+                    previewCount = 0;
+                }
+                clearPreview();
+                previewBounds.setBounds(0, 0, 0, 0);
             }
         }
         
         @Override public void mouseReleased(MouseEvent e) { 
-            if (painting && drawingTool > 0) {
-                // Draw final shape
+            if (painting && drawingTool > 0 && drawingTool != 7) {
+                // Drop the preview and draw final shape into the grid
+                clearPreview();
                 drawShape(startX, startY, e.getX() / pixelSize, e.getY() / pixelSize, SwingUtilities.isRightMouseButton(e), true);
+                markDirty(previewBounds);
+                previewBounds.setBounds(0, 0, 0, 0);
+                flushDirty();
             }
+            if (painting) commitEdit();
             painting = false;
         }
         
@@ -796,15 +1006,18 @@ public class PixelArtMaker {
             if (!painting) return;
             if (drawingTool == 0) {
                 paintAt(e, SwingUtilities.isRightMouseButton(e));
-            } else {
-                // For shapes, preview on temp grid
-                Color[][] preview = new Color[rows][cols];
-                for (int y = 0; y < rows; y++) 
-                    for (int x = 0; x < cols; x++) 
-                        preview[y][x] = tempGrid[y][x];
-                grid = preview;
+            } else if (drawingTool != 7) {
+                // For shapes, redraw the preview overlay; the grid itself is untouched
+                clearPreview();
                 drawShape(startX, startY, e.getX() / pixelSize, e.getY() / pixelSize, SwingUtilities.isRightMouseButton(e), false);
-                repaint();
+                // Repaint the union of the old and new preview so the old one gets erased
+                int oldX = previewBounds.x, oldY = previewBounds.y, oldW = previewBounds.width, oldH = previewBounds.height;
+                dirtyBounds(previewBounds);
+                if (oldW > 0 && oldH > 0) {
+                    markDirty(oldX, oldY);
+                    markDirty(oldX + oldW - 1, oldY + oldH - 1);
+                }
+                flushDirty();
             }
         }
         
@@ -814,6 +1027,15 @@ public class PixelArtMaker {
         @Override public void mouseExited(MouseEvent e) {}
         
         private void drawShape(int x1, int y1, int x2, int y2, boolean erase, boolean save) {
+            previewing = !save;
+            try {
+                drawShapeCells(x1, y1, x2, y2, erase);
+            } finally {
+                previewing = false;
+            }
+        }
+        
+        private void drawShapeCells(int x1, int y1, int x2, int y2, boolean erase) {
             switch (drawingTool) {
                 case 1: // Line
                     drawLine(x1, y1, x2, y2, erase);
@@ -836,6 +1058,27 @@ public class PixelArtMaker {
             }
         }
         
+        private void plot(int x, int y, boolean erase) {
+            if (previewing) {
+                // Erasing previews as the background so the cell looks cleared
+                int idx = y * cols + x;
+                previewLayer.getPixels()[idx] = erase ? backgroundDisplayArgb() : currentArgb;
+                if (previewCount == previewCells.length) previewCells = java.util.Arrays.copyOf(previewCells, previewCount * 2);
+                previewCells[previewCount++] = idx;
+            } else {
+                grid.set(x, y, erase ? PixelBuffer.TRANSPARENT : currentArgb);
+            }
+            markDirty(x, y);
+        }
+        
+        // Resets only the overlay cells written by the last preview
+        private void clearPreview() {
+            if (previewLayer == null) return;
+            int[] layer = previewLayer.getPixels();
+            for (int i = 0; i < previewCount; i++) layer[previewCells[i]] = PixelBuffer.TRANSPARENT;
+            previewCount = 0;
+        }
+        
         private void drawLine(int x1, int y1, int x2, int y2, boolean erase) {
             int dx = Math.abs(x2 - x1);
             int dy = Math.abs(y2 - y1);
@@ -846,8 +1089,7 @@ public class PixelArtMaker {
             int x = x1, y = y1;
             while (true) {
                 if (x >= 0 && x < cols && y >= 0 && y < rows) {
-                    if (erase) grid[y][x] = null;
-                    else grid[y][x] = currentColor;
+                    plot(x, y, erase);
                 }
                 if (x == x2 && y == y2) break;
                 int e2 = 2 * err;
@@ -861,8 +1103,7 @@ public class PixelArtMaker {
                 for (int y = y1; y <= y2; y++) {
                     for (int x = x1; x <= x2; x++) {
                         if (x >= 0 && x < cols && y >= 0 && y < rows) {
-                            if (erase) grid[y][x] = null;
-                            else grid[y][x] = currentColor;
+                            plot(x, y, erase);
                         }
                     }
                 }
@@ -870,24 +1111,20 @@ public class PixelArtMaker {
                 for (int x = x1; x <= x2; x++) {
                     if (x >= 0 && x < cols) {
                         if (y1 >= 0 && y1 < rows) {
-                            if (erase) grid[y1][x] = null;
-                            else grid[y1][x] = currentColor;
+                            plot(x, y1, erase);
                         }
                         if (y2 >= 0 && y2 < rows) {
-                            if (erase) grid[y2][x] = null;
-                            else grid[y2][x] = currentColor;
+                            plot(x, y2, erase);
                         }
                     }
                 }
                 for (int y = y1; y <= y2; y++) {
                     if (y >= 0 && y < rows) {
                         if (x1 >= 0 && x1 < cols) {
-                            if (erase) grid[y][x1] = null;
-                            else grid[y][x1] = currentColor;
+                            plot(x1, y, erase);
                         }
                         if (x2 >= 0 && x2 < cols) {
-                            if (erase) grid[y][x2] = null;
-                            else grid[y][x2] = currentColor;
+                            plot(x2, y, erase);
                         }
                     }
                 }
@@ -911,13 +1148,11 @@ public class PixelArtMaker {
                         
                         if (filled) {
                             if (dist <= 1.0) {
-                                if (erase) grid[y][x] = null;
-                                else grid[y][x] = currentColor;
+                                plot(x, y, erase);
                             }
                         } else {
                             if (dist <= 1.1 && dist >= 0.7) {
-                                if (erase) grid[y][x] = null;
-                                else grid[y][x] = currentColor;
+                                plot(x, y, erase);
                             }
                         }
                     }
@@ -944,9 +1179,9 @@ public class PixelArtMaker {
             mainContentPanel.add(animationPanel, BorderLayout.CENTER);
             animationBtn.setText("< Back");
             isAnimationMode = true;
+            canvas.setShowOnionSkin(true);
         } else {
-            // Switch back to pixel art mode - remove canvas from animationPanel and restore to pixelArtPanel
-            animationPanel.removeAll();
+            // Switch back to pixel art mode - move canvas from animationPanel back to pixelArtPanel
             mainContentPanel.removeAll();
             pixelArtPanel.removeAll();
             
@@ -967,6 +1202,7 @@ public class PixelArtMaker {
             mainContentPanel.add(pixelArtPanel, BorderLayout.CENTER);
             animationBtn.setText("Animation");
             isAnimationMode = false;
+            canvas.setShowOnionSkin(false);
         }
         mainContentPanel.revalidate();
         mainContentPanel.repaint();
@@ -976,19 +1212,47 @@ public class PixelArtMaker {
         frame.repaint();
     }
     
+    // Brings the animation panel in line with the frame list. The panel is built once;
+    // switching, adding or deleting frames only updates the label, delay and timeline.
     private void updateAnimationPanel() {
-        animationPanel.removeAll();
+        if (frameTimeline == null) buildAnimationPanel();
         List<AnimationFrame> frames = canvas.getAnimationFrames();
         //by @mc.zminecrafter_18 on Instagram, Zmc18-Robotics on Github
         // Auto-add first frame if empty
         if (frames.isEmpty()) {
-            frames.add(new AnimationFrame(canvas.captureCurrentFrame(), 100));
+            frames.add(AnimationFrame.wrap(canvas.captureCurrentFrame(), 100));
             canvas.setCurrentFrameIndex(0);
             animationCurrentFrameIndex = 0;
         } else {
             animationCurrentFrameIndex = canvas.getCurrentFrameIndex();
         }
         
+        syncingAnimationPanel = true;
+        frameIndicatorLabel.setText(String.format("<< %d >>", animationCurrentFrameIndex + 1));
+        if (animationCurrentFrameIndex >= 0 && animationCurrentFrameIndex < frames.size()) {
+            frameDelaySpinner.setValue(IndexedFrameList.delay(frames, animationCurrentFrameIndex));
+        }
+        loopDelaySpinner.setValue(animationLoopDelay);
+        syncingAnimationPanel = false;
+        frameTimeline.setFrames(frames);
+        frameTimeline.setSelectedIndex(animationCurrentFrameIndex);
+        // The canvas moves to the pixel art panel and back when the mode is toggled
+        if (canvas.getParent() != animationCanvasScroll.getViewport()) animationCanvasScroll.setViewportView(canvas);
+        animationPanel.revalidate();
+        animationPanel.repaint();
+    }
+    
+    // Stores the edited frame, then loads another one into the canvas
+    private void selectAnimationFrame(int idx) {
+        List<AnimationFrame> frames = canvas.getAnimationFrames();
+        if (idx < 0 || idx >= frames.size() || idx == animationCurrentFrameIndex) return;
+        storeCurrentFrame();
+        animationCurrentFrameIndex = idx;
+        canvas.setCurrentFrameIndex(idx);
+        updateAnimationPanel();
+    }
+    
+    private void buildAnimationPanel() {
         // Top: Frame navigation
         JPanel topAnimPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 5));
         JButton prevBtn = new JButton("<<");
@@ -996,25 +1260,8 @@ public class PixelArtMaker {
         
         frameIndicatorLabel = new JLabel(String.format("<< %d >>", animationCurrentFrameIndex + 1));
         
-        prevBtn.addActionListener(e -> {
-            if (animationCurrentFrameIndex > 0) {
-                animationCurrentFrameIndex--;
-                canvas.setCurrentFrameIndex(animationCurrentFrameIndex);
-                frameIndicatorLabel.setText(String.format("<< %d >>", animationCurrentFrameIndex + 1));
-                updateAnimationPanel();
-                canvas.repaint();
-            }
-        });
-        
-        nextBtn.addActionListener(e -> {
-            if (animationCurrentFrameIndex < frames.size() - 1) {
-                animationCurrentFrameIndex++;
-                canvas.setCurrentFrameIndex(animationCurrentFrameIndex);
-                frameIndicatorLabel.setText(String.format("<< %d >>", animationCurrentFrameIndex + 1));
-                updateAnimationPanel();
-                canvas.repaint();
-            }
-        });
+        prevBtn.addActionListener(e -> selectAnimationFrame(animationCurrentFrameIndex - 1));
+        nextBtn.addActionListener(e -> selectAnimationFrame(animationCurrentFrameIndex + 1));
         
         topAnimPanel.add(prevBtn);
         topAnimPanel.add(frameIndicatorLabel);
@@ -1023,16 +1270,13 @@ public class PixelArtMaker {
         // Add frame management buttons
         JButton addFrameBtn = new JButton("+");
         addFrameBtn.addActionListener(e -> {
+            List<AnimationFrame> frames = canvas.getAnimationFrames();
             // IMPORTANT: Save current frame FIRST before switching
-            if (animationCurrentFrameIndex >= 0 && animationCurrentFrameIndex < frames.size()) {
-                Color[][] currentData = canvas.captureCurrentFrame();
-                int currentDelay = frames.get(animationCurrentFrameIndex).delay;
-                frames.set(animationCurrentFrameIndex, new AnimationFrame(currentData, currentDelay));
-                System.out.println("Frame " + animationCurrentFrameIndex + " saved with data");
-            }
+            storeCurrentFrame();
+            System.out.println("Frame " + animationCurrentFrameIndex + " saved with data");
             // Add new blank frame
-            Color[][] newFrame = new Color[canvas.getRows()][canvas.getCols()];
-            frames.add(new AnimationFrame(newFrame, 100));
+            PixelBuffer newFrame = new PixelBuffer(canvas.getCols(), canvas.getRows());
+            frames.add(AnimationFrame.wrap(newFrame, 100));
             animationCurrentFrameIndex = frames.size() - 1;
             System.out.println("Frame " + animationCurrentFrameIndex + " added (blank)");
             System.out.println("Total frames: " + frames.size());
@@ -1042,16 +1286,12 @@ public class PixelArtMaker {
 
         JButton copyFrameBtn = new JButton("Copy");
         copyFrameBtn.addActionListener(e -> {
+            List<AnimationFrame> frames = canvas.getAnimationFrames();
             // IMPORTANT: Save current frame FIRST before switching
-            if (animationCurrentFrameIndex >= 0 && animationCurrentFrameIndex < frames.size()) {
-                Color[][] currentData = canvas.captureCurrentFrame();
-                int currentDelay = frames.get(animationCurrentFrameIndex).delay;
-                frames.set(animationCurrentFrameIndex, new AnimationFrame(currentData, currentDelay));
-                System.out.println("Frame " + animationCurrentFrameIndex + " saved with data");
-            }
-            // Copy current frame to new frame
-            Color[][] copyFrame = canvas.captureCurrentFrame();
-            frames.add(new AnimationFrame(copyFrame, 100));
+            storeCurrentFrame();
+            System.out.println("Frame " + animationCurrentFrameIndex + " saved with data");
+            // Copy current frame to new frame; indexed frames share its tiles until edited
+            IndexedFrameList.addCopy(frames, animationCurrentFrameIndex, frames.size(), 100);
             animationCurrentFrameIndex = frames.size() - 1;
             System.out.println("Frame " + animationCurrentFrameIndex + " added (copy from current)");
             System.out.println("Total frames: " + frames.size());
@@ -1061,6 +1301,7 @@ public class PixelArtMaker {
 
         JButton removeFrameBtn = new JButton("Delete Frame");
         removeFrameBtn.addActionListener(e -> {
+            List<AnimationFrame> frames = canvas.getAnimationFrames();
             if (frames.size() <= 1) {
                 JOptionPane.showMessageDialog(frame, "Cannot delete the last frame! At least 1 frame must remain.");
                 return;
@@ -1083,25 +1324,25 @@ public class PixelArtMaker {
         topAnimPanel.add(copyFrameBtn);
         topAnimPanel.add(removeFrameBtn);
         
-        animationPanel.add(topAnimPanel, BorderLayout.NORTH);
+        // Thumbnail strip; only the visible cells are painted and thumbnails render in the background
+        frameTimeline = new FrameTimeline(canvas.getAnimationFrames(), this::selectAnimationFrame);
+        JScrollPane timelineScroll = new JScrollPane(frameTimeline,
+                JScrollPane.VERTICAL_SCROLLBAR_NEVER, JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS);
+        
+        JPanel northPanel = new JPanel(new BorderLayout());
+        northPanel.add(topAnimPanel, BorderLayout.NORTH);
+        northPanel.add(timelineScroll, BorderLayout.CENTER);
+        animationPanel.add(northPanel, BorderLayout.NORTH);
         
         // Center: Canvas - add it here since it was removed from pixelArtPanel
-        animationPanel.add(new JScrollPane(canvas), BorderLayout.CENTER);
+        animationCanvasScroll = new JScrollPane(canvas);
+        animationPanel.add(animationCanvasScroll, BorderLayout.CENTER);
         
         // Bottom: Frame settings with proper layout
         JPanel bottomAnimPanel = new JPanel();
         bottomAnimPanel.setLayout(new BoxLayout(bottomAnimPanel, BoxLayout.Y_AXIS));
         bottomAnimPanel.setBorder(BorderFactory.createTitledBorder("Frame Settings"));
 
-        int currentFrameIdx = canvas.getCurrentFrameIndex();
-        if (currentFrameIdx < 0 || currentFrameIdx >= frames.size()) {
-            currentFrameIdx = 0;
-        }
-        int currentDelay = frames.get(currentFrameIdx).delay;
-        
-        // Buat final reference untuk digunakan di lambda
-        final int frameIndexForSpinner = currentFrameIdx;
-
         // Frame Delay Mode Toggle Panel (New)
         JPanel delayModePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         delayModePanel.setBorder(BorderFactory.createTitledBorder("Frame Delay Input Mode"));
@@ -1118,8 +1359,9 @@ public class PixelArtMaker {
         
         // Frame Delay Free Input Panel (existing spinner)
         JPanel delayPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
-        JSpinner delaySpinner = new JSpinner(new SpinnerNumberModel(currentDelay, 10, 5000, 10));
-        final JSpinner finalDelaySpinner = delaySpinner; // Make it final for lambda
+        // The value is filled in by updateAnimationPanel for the current frame
+        JSpinner delaySpinner = new JSpinner(new SpinnerNumberModel(100, 10, 5000, 10));
+        frameDelaySpinner = delaySpinner;
         delayPanel.add(new JLabel("Frame Delay (ms):"));
         delayPanel.add(new JLabel("(Delay between this and next frame)"));
         delayPanel.add(delaySpinner);
@@ -1135,11 +1377,12 @@ public class PixelArtMaker {
             btn.setPreferredSize(new Dimension(60, 30));
             final int val = delayValue;
             btn.addActionListener(e -> {
-                if (frameIndexForSpinner >= 0 && frameIndexForSpinner < frames.size()) {
-                    AnimationFrame af = frames.get(frameIndexForSpinner);
+                List<AnimationFrame> frames = canvas.getAnimationFrames();
+                if (animationCurrentFrameIndex >= 0 && animationCurrentFrameIndex < frames.size()) {
+                    AnimationFrame af = frames.get(animationCurrentFrameIndex);
                     af.delay = val;
-                    finalDelaySpinner.setValue(val);
-                    System.out.println("[PRESET BUTTON] Frame " + frameIndexForSpinner + " -> delay set to " + val + "ms");
+                    delaySpinner.setValue(val);
+                    System.out.println("[PRESET BUTTON] Frame " + animationCurrentFrameIndex + " -> delay set to " + val + "ms");
                 }
             });
             delayButtons[i] = btn;
@@ -1160,17 +1403,19 @@ public class PixelArtMaker {
         //by @mc.zminecrafter_18 on Instagram, Zmc18-Robotics on Github
         // Change listener for free input spinner updates AnimationFrame.delay
         delaySpinner.addChangeListener(e -> {
+            if (syncingAnimationPanel) return;
             int newDelay = (Integer) delaySpinner.getValue();
-            if (frameIndexForSpinner >= 0 && frameIndexForSpinner < frames.size()) {
-                AnimationFrame af = frames.get(frameIndexForSpinner);
+            List<AnimationFrame> frames = canvas.getAnimationFrames();
+            if (animationCurrentFrameIndex >= 0 && animationCurrentFrameIndex < frames.size()) {
+                AnimationFrame af = frames.get(animationCurrentFrameIndex);
                 af.delay = newDelay;
-                System.out.println("[SPINNER CHANGED] Frame " + frameIndexForSpinner + " -> delay = " + newDelay + "ms (now stored in frame object)");
+                System.out.println("[SPINNER CHANGED] Frame " + animationCurrentFrameIndex + " -> delay = " + newDelay + "ms (now stored in frame object)");
             }
         });
         
         // Loop Delay row (unchanged)
         JPanel loopDelayPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
-        JSpinner loopDelaySpinner = new JSpinner(new SpinnerNumberModel(animationLoopDelay, 0, 5000, 100));
+        loopDelaySpinner = new JSpinner(new SpinnerNumberModel(animationLoopDelay, 0, 5000, 100));
         loopDelaySpinner.addChangeListener(e -> {
             animationLoopDelay = (Integer) loopDelaySpinner.getValue();
             System.out.println("Loop delay updated to: " + animationLoopDelay + "ms");
@@ -1180,6 +1425,25 @@ public class PixelArtMaker {
         loopDelayPanel.add(loopDelaySpinner);
         bottomAnimPanel.add(loopDelayPanel);
 
+        // Onion skin row: neighbouring frames shown faintly under the current one
+        OnionSkin onion = canvas.getOnionSkin();
+        JPanel onionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JCheckBox onionBox = new JCheckBox("Onion Skin", onion.isEnabled());
+        JSpinner onionFramesSpinner = new JSpinner(new SpinnerNumberModel(onion.getFrameCount(), 1, OnionSkin.MAX_FRAMES, 1));
+        JSpinner onionOpacitySpinner = new JSpinner(new SpinnerNumberModel(Math.round(onion.getOpacity() * 100 / 255f), 5, 100, 5));
+        JCheckBox onionTintBox = new JCheckBox("Tint (red before, blue after)", onion.isTinted());
+        onionBox.addActionListener(e -> { onion.setEnabled(onionBox.isSelected()); canvas.repaint(); });
+        onionFramesSpinner.addChangeListener(e -> { onion.setFrameCount((Integer) onionFramesSpinner.getValue()); canvas.repaint(); });
+        onionOpacitySpinner.addChangeListener(e -> { onion.setOpacity((Integer) onionOpacitySpinner.getValue() * 255 / 100); canvas.repaint(); });
+        onionTintBox.addActionListener(e -> { onion.setTinted(onionTintBox.isSelected()); canvas.repaint(); });
+        onionPanel.add(onionBox);
+        onionPanel.add(new JLabel("Frames each side:"));
+        onionPanel.add(onionFramesSpinner);
+        onionPanel.add(new JLabel("Opacity (%):"));
+        onionPanel.add(onionOpacitySpinner);
+        onionPanel.add(onionTintBox);
+        bottomAnimPanel.add(onionPanel);
+
 
 
         // Buttons row
@@ -1187,11 +1451,12 @@ public class PixelArtMaker {
         JButton playBtn = new JButton("Play");
         playBtn.addActionListener(e -> {
             // SAVE current delay value SEBELUM play
-            if (frameIndexForSpinner >= 0 && frameIndexForSpinner < frames.size()) {
-                int currentSpinnerValue = (Integer) finalDelaySpinner.getValue();
-                AnimationFrame af = frames.get(frameIndexForSpinner);
+            List<AnimationFrame> frames = canvas.getAnimationFrames();
+            if (animationCurrentFrameIndex >= 0 && animationCurrentFrameIndex < frames.size()) {
+                int currentSpinnerValue = (Integer) delaySpinner.getValue();
+                AnimationFrame af = frames.get(animationCurrentFrameIndex);
                 af.delay = currentSpinnerValue;
-                System.out.println("PRE-PLAY SAVE: Frame " + frameIndexForSpinner + " delay = " + currentSpinnerValue + "ms");
+                System.out.println("PRE-PLAY SAVE: Frame " + animationCurrentFrameIndex + " delay = " + currentSpinnerValue + "ms");
             }
             playAnimation();
         });
@@ -1204,8 +1469,6 @@ public class PixelArtMaker {
         bottomAnimPanel.add(buttonPanel);
         
         animationPanel.add(bottomAnimPanel, BorderLayout.SOUTH);
-        animationPanel.revalidate();
-        animationPanel.repaint();
     }
 
     private void playAnimation() {
@@ -1218,22 +1481,12 @@ public class PixelArtMaker {
         // CRITICAL: Save current frame BEFORE play starts
         System.out.println("\n>>> BEFORE PLAY: Saving frame " + animationCurrentFrameIndex);
         if (animationCurrentFrameIndex >= 0 && animationCurrentFrameIndex < frames.size()) {
-            Color[][] currentData = canvas.captureCurrentFrame();
+            PixelBuffer currentData = canvas.captureCurrentFrame();
             int currentSavedDelay = frames.get(animationCurrentFrameIndex).delay;
-            frames.set(animationCurrentFrameIndex, new AnimationFrame(currentData, currentSavedDelay));
+            frames.set(animationCurrentFrameIndex, AnimationFrame.wrap(currentData, currentSavedDelay));
             System.out.println("    Frame " + animationCurrentFrameIndex + " saved with delay=" + currentSavedDelay + "ms");
         }
 
-        // Print semua frame delays DENGAN DEBUGGING
-        System.out.println("\n========== ANIMATION DEBUG ==========");
-        System.out.println("Total frames: " + frames.size());
-        for (int i = 0; i < frames.size(); i++) {
-            AnimationFrame af = frames.get(i);
-            System.out.println("  Frame " + i + ": data=" + (af.data != null ? "OK" : "NULL") + ", delay=" + af.delay + "ms");
-        }
-        System.out.println("Loop delay: " + animationLoopDelay + "ms");
-        System.out.println("====================================\n");
-
         JDialog playDialog = new JDialog(frame, "Animation Player", false);
         playDialog.setSize(600, 600);
         playDialog.setLocationRelativeTo(frame);
@@ -1245,67 +1498,58 @@ public class PixelArtMaker {
         JPanel playPanel = new JPanel(new BorderLayout());
         playPanel.add(animCanvas, BorderLayout.CENTER);
 
-        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-        final boolean[] isPlaying = {true};
+        JSlider seekSlider = new JSlider(0, frames.size() - 1, 0);
+        JLabel statusLabel = new JLabel(" ", SwingConstants.CENTER);
+        JButton playPauseBtn = new JButton("Pause");
+        JCheckBox loopBox = new JCheckBox("Loop", true);
         JButton stopBtn = new JButton("Stop");
-        stopBtn.addActionListener(e -> {
-            isPlaying[0] = false;
+        final boolean[] updatingSlider = {false};
+
+        // Frames run on a nanoTime timeline; the callback runs on the EDT for each shown frame
+        final PlaybackScheduler[] playerRef = new PlaybackScheduler[1];
+        PlaybackScheduler player = new PlaybackScheduler(frames, animationLoopDelay, idx -> {
+            animCanvas.setCurrentFrame(idx);
+            updatingSlider[0] = true;
+            seekSlider.setValue(idx);
+            updatingSlider[0] = false;
+            PlaybackScheduler p = playerRef[0];
+            statusLabel.setText(String.format("Frame %d/%d   late avg %.1f ms, max %.1f ms   dropped %d",
+                    idx + 1, frames.size(), p.getAverageLatenessMs(), p.getMaxLatenessMs(), p.getFramesDropped()));
+        });
+        playerRef[0] = player;
+        player.setStateListener(() -> playPauseBtn.setText(player.isPlaying() ? "Pause" : "Play"));
+
+        playPauseBtn.addActionListener(e -> {
+            if (player.isPlaying()) player.pause();
+            else player.play();
+        });
+        loopBox.addActionListener(e -> player.setLoop(loopBox.isSelected()));
+        seekSlider.addChangeListener(e -> {
+            if (!updatingSlider[0]) player.seek(seekSlider.getValue());
+        });
+        Runnable close = () -> {
+            player.stop();
             playDialog.dispose();
+        };
+        stopBtn.addActionListener(e -> close.run());
+        playDialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) { close.run(); }
         });
+
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        controlPanel.add(playPauseBtn);
+        controlPanel.add(loopBox);
         controlPanel.add(stopBtn);
-        playPanel.add(controlPanel, BorderLayout.SOUTH);
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(seekSlider, BorderLayout.NORTH);
+        southPanel.add(controlPanel, BorderLayout.CENTER);
+        southPanel.add(statusLabel, BorderLayout.SOUTH);
+        playPanel.add(southPanel, BorderLayout.SOUTH);
 
         playDialog.add(playPanel);
         playDialog.setVisible(true);
-
-        // SIMPLE LOOP: 0 -> 1 -> 2 -> ... -> N-1 -> loop
-        Thread animThread = new Thread(() -> {
-            try {
-                int loopCount = 0;
-                while (isPlaying[0]) {
-                    loopCount++;
-                    System.out.println("\n--- LOOP " + loopCount + " ---");
-                    
-                    // Loop through semua frames dengan delay antara frame secara tepat
-                    for (int i = 0; i < frames.size(); i++) {
-                        if (!isPlaying[0]) break;
-                        
-                        System.out.println("Display frame " + i);
-                        final int idx = i;
-                        
-                        SwingUtilities.invokeLater(() -> {
-                            animCanvas.setCurrentFrame(idx);
-                        });
-
-                        int frameDelay = frames.get(i).delay;
-                        if (frameDelay <= 0) frameDelay = 100;
-
-                        System.out.println("  Waiting frame delay " + frameDelay + "ms before " + ((i + 1 < frames.size()) ? "next frame" : "loop delay"));
-
-                        Thread.sleep(frameDelay);
-                        
-                        // If this is the last frame and animation is still playing, apply loop delay
-                        if (i == frames.size() - 1 && isPlaying[0] && animationLoopDelay > 0) {
-                            System.out.println("  Applying loop delay " + animationLoopDelay + "ms");
-                            Thread.sleep(animationLoopDelay);
-                        }
-                    }
-                }
-            } catch (InterruptedException e) {
-                System.out.println("Animation stopped by user");
-            }
-            finally {
-                isPlaying[0] = false;
-                System.out.println("Animation ended\n");
-                SwingUtilities.invokeLater(() -> {
-                    if (playDialog.isDisplayable()) {
-                        playDialog.dispose();
-                    }
-                });
-            }
-        });
-        animThread.setDaemon(true);
-        animThread.start();
+        player.play();
     }
     
     private void applyTheme() {
@@ -1573,22 +1817,15 @@ public class PixelArtMaker {
     }
     
     private boolean isFFmpegInstalled() {
-        try {
-            ProcessBuilder pb = new ProcessBuilder("ffmpeg", "-version");
-            pb.redirectErrorStream(true);
-            Process p = pb.start();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
-            String line = reader.readLine();
-            p.waitFor();
-            return line != null && line.toLowerCase().contains("ffmpeg");
-        } catch (Exception e) {
-            return false;
-        }
+        return FfmpegExporter.isAvailable(ffmpegPath);
     }
 
     private void exportToMP4() {
         if (!isFFmpegInstalled()) {
-            JOptionPane.showMessageDialog(frame, "MP4 export requires FFmpeg.\nPlease install FFmpeg first.");
+            int choice = JOptionPane.showConfirmDialog(frame,
+                    "MP4 export requires FFmpeg, which was not found.\nExport as animated PNG instead?",
+                    "FFmpeg not found", JOptionPane.YES_NO_OPTION);
+            if (choice == JOptionPane.YES_OPTION) exportToAPNG();
             return;
         }
 
@@ -1598,102 +1835,27 @@ public class PixelArtMaker {
             String filePath = fc.getSelectedFile().getAbsolutePath();
             if (!filePath.endsWith(".mp4")) filePath += ".mp4";
 
-            List<AnimationFrame> frames = canvas.getAnimationFrames();
-            if (frames.isEmpty()) {
+            storeCurrentFrame();
+            if (canvas.getAnimationFrames().isEmpty()) {
                 JOptionPane.showMessageDialog(frame, "No animation frames to export.");
                 return;
             }
 
-            // Create temp directory for frames
-            File tempDir = new File(System.getProperty("java.io.tmpdir"), "pixelartmaker_export_frames");
-            if (tempDir.exists()) {
-                for (File f : tempDir.listFiles()) {
-                    f.delete();
-                }
-            } else {
-                tempDir.mkdir();
-            }
-
-            try {
-                // Export each frame as PNG image in temp directory
-                for (int i = 0; i < frames.size(); i++) {
-                    AnimationFrame af = frames.get(i);
-                    BufferedImage img = new BufferedImage(canvas.getCols() * canvas.getPixelSize(),
-                                                          canvas.getRows() * canvas.getPixelSize(),
-                                                          BufferedImage.TYPE_INT_ARGB);
-                    Graphics2D g = img.createGraphics();
-                    // Draw background white
-                    g.setColor(Color.WHITE);
-                    g.fillRect(0, 0, img.getWidth(), img.getHeight());
-                    
-                    for (int y = 0; y < af.data.length; y++) {
-                        for (int x = 0; x < af.data[0].length; x++) {
-                            Color c = af.data[y][x];
-                            if (c != null) {
-                                g.setColor(c);
-                                g.fillRect(x * canvas.getPixelSize(), y * canvas.getPixelSize(),
-                                           canvas.getPixelSize(), canvas.getPixelSize());
-                            }
-                        }
-                    }
-                    g.dispose();
-
-                    File frameFile = new File(tempDir, String.format("frame_%05d.png", i));
-                    ImageIO.write(img, "PNG", frameFile);
-                }
-
-                // Build ffmpeg command to create video from images
-                // Calculate total duration to estimate fps (approximate)
-                int totalDelayMs = 0;
-                for (AnimationFrame af : frames) {
-                    totalDelayMs += af.delay > 0 ? af.delay : 100;
-                }
-                double fps = frames.size() * 1000.0 / totalDelayMs;
-
-                List<String> command = new ArrayList<>();
-                command.add("ffmpeg");
-                command.add("-y"); // Overwrite output
-                command.add("-framerate");
-                command.add(String.format("%.2f", fps));
-                command.add("-i");
-                // frame file pattern
-                command.add(new File(tempDir, "frame_%05d.png").getAbsolutePath());
-                command.add("-c:v");
-                command.add("libx264");
-                command.add("-pix_fmt");
-                command.add("yuv420p");
-                command.add(filePath);
-
-                ProcessBuilder pb = new ProcessBuilder(command);
-                pb.redirectErrorStream(true);
-                Process process = pb.start();
-
-                BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                String line;
-                StringBuilder ffmpegOutput = new StringBuilder();
-                while ((line = reader.readLine()) != null) {
-                    ffmpegOutput.append(line).append("\n");
-                }
-                int exitCode = process.waitFor();
-                if (exitCode == 0) {
-                    JOptionPane.showMessageDialog(frame, "MP4 export successful!\nSaved to: " + filePath);
-                } else {
-                    JOptionPane.showMessageDialog(frame, "FFmpeg failed to export MP4.\nOutput:\n" + ffmpegOutput.toString());
-                } //by @mc.zminecrafter_18 on Instagram, Zmc18-Robotics on Github
-
-            } catch (Exception e) {
-                JOptionPane.showMessageDialog(frame, "Error during MP4 export:\n" + e.getMessage());
-            } finally {
-                // Cleanup temp images
-                for (File f : tempDir.listFiles()) {
-                    f.delete();
-                }
-            }
+            // Frames are streamed straight into ffmpeg, no temp images
+            final File out = new File(filePath);
+            // The worker reads a snapshot, so editing frames during the export does not affect it
+            List<AnimationFrame> frames = IndexedFrameList.snapshot(canvas.getAnimationFrames());
+            FfmpegExporter exporter = new FfmpegExporter(frames, canvas.getPixelSize(), canvas.backgroundMode);
+            exporter.setExecutable(ffmpegPath);
+            exporter.setLoopDelay(animationLoopDelay);
+            runExport("Exporting MP4...", frames, progress -> exporter.export(out, progress),
+                    "MP4 export successful!\nSaved to: " + filePath,
+                    "Error during MP4 export:\n");
         }
     }
     
     private void showAnimationExportOptions() {
-        String[] options = {"Export MP4 (requires FFmpeg)", "Export Animated GIF", "Export PNG Sequence"};
+        String[] options = {"Export MP4 (requires FFmpeg)", "Export Animated GIF", "Export Animated PNG", "Export PNG Sequence"};
         int choice = JOptionPane.showOptionDialog(frame, "Choose export format:", "Export Animation",
                 JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
         if (choice == -1) return; // User cancelled
@@ -1706,14 +1868,17 @@ public class PixelArtMaker {
                 exportToAnimatedGIF();
                 break;
             case 2:
+                exportToAPNG();
+                break;
+            case 3:
                 exportPNGSequence();
                 break;
         }
     }
     
     private void exportToAnimatedGIF() {
-        List<AnimationFrame> frames = canvas.getAnimationFrames();
-        if (frames.isEmpty()) {
+        storeCurrentFrame();
+        if (canvas.getAnimationFrames().isEmpty()) {
             JOptionPane.showMessageDialog(frame, "No animation frames to export.");
             return;
         }
@@ -1727,67 +1892,120 @@ public class PixelArtMaker {
             file = new File(file.getParentFile(), file.getName() + ".gif");
         }
         
-        try {
-            ImageOutputStream output = ImageIO.createImageOutputStream(file);
-            GifSequenceWriter writer = null;
-            
-            for (int i = 0; i < frames.size(); i++) {
-                AnimationFrame af = frames.get(i);
-                BufferedImage img = new BufferedImage(canvas.getCols() * canvas.getPixelSize(),
-                                                      canvas.getRows() * canvas.getPixelSize(),
-                                                      BufferedImage.TYPE_INT_ARGB);
-                Graphics2D g = img.createGraphics();
-                // Draw background per canvas backgroundMode
-                switch (canvas.backgroundMode) {
-                    case 0: // white
-                        g.setColor(Color.WHITE);
-                        g.fillRect(0, 0, img.getWidth(), img.getHeight());
-                        break;
-                    case 1: // black
-                        g.setColor(Color.BLACK);
-                        g.fillRect(0, 0, img.getWidth(), img.getHeight());
-                        break;
-                    case 2: // transparent
-                        // Do not fill background, leave alpha 0
-                        break;
-                    default:
-                        g.setColor(Color.WHITE);
-                        g.fillRect(0, 0, img.getWidth(), img.getHeight());
-                        break;
-                }
-                
-                for (int y = 0; y < af.data.length; y++) {
-                    for (int x = 0; x < af.data[0].length; x++) {
-                        Color c = af.data[y][x];
-                        if (c != null) {
-                            g.setColor(c);
-                            g.fillRect(x * canvas.getPixelSize(), y * canvas.getPixelSize(),
-                                       canvas.getPixelSize(), canvas.getPixelSize());
-                        }
-                    }
-                }
-                g.dispose();
-                
-                if (writer == null) {
-                    writer = new GifSequenceWriter(output, img.getType(), af.delay, true);
-                }
-                writer.writeToSequence(img);
+        final File out = file;
+        // The worker reads a snapshot, so editing frames during the export does not affect it
+        List<AnimationFrame> frames = IndexedFrameList.snapshot(canvas.getAnimationFrames());
+        GifExporter exporter = new GifExporter(frames, canvas.getPixelSize(), canvas.backgroundMode);
+        exporter.setLoopDelay(animationLoopDelay);
+        runExport("Exporting animated GIF...", frames, progress -> exporter.export(out, progress),
+                "Animated GIF exported successfully:\n" + out.getAbsolutePath(),
+                "Error exporting animated GIF: ");
+    }
+    
+    private void exportToAPNG() {
+        storeCurrentFrame();
+        if (canvas.getAnimationFrames().isEmpty()) {
+            JOptionPane.showMessageDialog(frame, "No animation frames to export.");
+            return;
+        }
+        
+        JFileChooser fc = new JFileChooser();
+        fc.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("Animated PNG", "png", "apng"));
+        if (fc.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) return;
+        
+        File file = fc.getSelectedFile();
+        String name = file.getName().toLowerCase();
+        if (!name.endsWith(".png") && !name.endsWith(".apng")) {
+            file = new File(file.getParentFile(), file.getName() + ".png");
+        }
+        
+        final File out = file;
+        // The worker reads a snapshot, so editing frames during the export does not affect it
+        List<AnimationFrame> frames = IndexedFrameList.snapshot(canvas.getAnimationFrames());
+        ApngExporter exporter = new ApngExporter(frames, canvas.getPixelSize(), canvas.backgroundMode);
+        exporter.setLoopDelay(animationLoopDelay);
+        runExport("Exporting animated PNG...", frames, progress -> exporter.export(out, progress),
+                "Animated PNG exported successfully:\n" + out.getAbsolutePath(),
+                "Error exporting animated PNG: ");
+    }
+    
+    /**
+     * Export or import job run off the event thread by runExport() and runImport().
+     */
+    private interface ExportTask {
+        /**
+         * @return true when the job completed, false when it was cancelled
+         */
+        boolean run(ExportProgress progress) throws Exception;
+    }
+    
+    /**
+     * Runs an export of a frame snapshot on a background thread behind a cancellable progress
+     * dialog, then reports the outcome on the event thread. The snapshot is closed when the
+     * export ends, so a mapped project's file is released once nothing reads it.
+     */
+    private void runExport(String title, List<AnimationFrame> frames, ExportTask task, String doneMessage, String errorPrefix) {
+        ExportTask closing = progress -> {
+            try {
+                return task.run(progress);
+            } finally {
+                if (frames instanceof Closeable) ((Closeable) frames).close();
+            }
+        };
+        runInBackground(title, frames.size(), closing, () -> JOptionPane.showMessageDialog(frame, doneMessage),
+                "Export cancelled.", errorPrefix);
+    }
+    
+    /**
+     * Runs a job on a background thread behind a cancellable progress dialog; onDone runs
+     * on the event thread if the job completed.
+     */
+    private void runInBackground(String title, int total, ExportTask task, Runnable onDone,
+                                 String cancelledMessage, String errorPrefix) {
+        ProgressMonitor monitor = new ProgressMonitor(frame, title, "", 0, total);
+        monitor.setMillisToDecideToPopup(250);
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        SwingWorker<Boolean, Integer> worker = new SwingWorker<Boolean, Integer>() {
+            @Override
+            protected Boolean doInBackground() throws Exception {
+                return task.run(new ExportProgress() {
+                    @Override
+                    public void frameDone(int done, int frameTotal) { publish(done); }
+                    @Override
+                    public boolean isCancelled() { return cancelled.get(); }
+                });
             }
             
-            if (writer != null) {
-                writer.close();
+            @Override
+            protected void process(List<Integer> chunks) {
+                if (monitor.isCanceled()) cancelled.set(true);
+                monitor.setNote(chunks.get(chunks.size() - 1) + " / " + total + " frames");
+                monitor.setProgress(chunks.get(chunks.size() - 1));
             }
-            output.close();
             
-            JOptionPane.showMessageDialog(frame, "Animated GIF exported successfully:\n" + file.getAbsolutePath());
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(frame, "Error exporting animated GIF: " + e.getMessage());
-        }
+            @Override
+            protected void done() {
+                monitor.close();
+                try {
+                    if (get()) {
+                        onDone.run();
+                    } else {
+                        JOptionPane.showMessageDialog(frame, cancelledMessage);
+                    }
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(frame, errorPrefix + cause.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        worker.execute();
     }
     
     private void exportPNGSequence() {
-        List<AnimationFrame> frames = canvas.getAnimationFrames();
-        if (frames.isEmpty()) {
+        storeCurrentFrame();
+        if (canvas.getAnimationFrames().isEmpty()) {
             JOptionPane.showMessageDialog(frame, "No animation frames to export.");
             return;
         }
@@ -1797,37 +2015,12 @@ public class PixelArtMaker {
         if (fc.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) return;
         
         File dir = fc.getSelectedFile();
-        
-        try {
-            for (int i = 0; i < frames.size(); i++) {
-                AnimationFrame af = frames.get(i);
-                BufferedImage img = new BufferedImage(canvas.getCols() * canvas.getPixelSize(),
-                                                      canvas.getRows() * canvas.getPixelSize(),
-                                                      BufferedImage.TYPE_INT_ARGB);
-                Graphics2D g = img.createGraphics();
-                // Draw background white
-                g.setColor(Color.WHITE);
-                g.fillRect(0, 0, img.getWidth(), img.getHeight());
-                
-                for (int y = 0; y < af.data.length; y++) {
-                    for (int x = 0; x < af.data[0].length; x++) {
-                        Color c = af.data[y][x];
-                        if (c != null) {
-                            g.setColor(c);
-                            g.fillRect(x * canvas.getPixelSize(), y * canvas.getPixelSize(),
-                                       canvas.getPixelSize(), canvas.getPixelSize());
-                        }
-                    }
-                }
-                g.dispose();
-                
-                File outFile = new File(dir, String.format("frame_%05d.png", i));
-                ImageIO.write(img, "PNG", outFile);
-            }
-            JOptionPane.showMessageDialog(frame, "PNG sequence exported successfully to:\n" + dir.getAbsolutePath());
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(frame, "Error exporting PNG sequence: " + e.getMessage());
-        }
+        // The worker reads a snapshot, so editing frames during the export does not affect it
+        List<AnimationFrame> frames = IndexedFrameList.snapshot(canvas.getAnimationFrames());
+        PngSequenceExporter exporter = new PngSequenceExporter(frames, canvas.getPixelSize(), canvas.backgroundMode);
+        runExport("Exporting PNG sequence...", frames, progress -> exporter.export(dir, progress),
+                "PNG sequence exported successfully to:\n" + dir.getAbsolutePath(),
+                "Error exporting PNG sequence: ");
     }
     
     private void selectTool(int toolId) {
@@ -1851,11 +2044,11 @@ public class PixelArtMaker {
     //by @mc.zminecrafter_18 on Instagram, Zmc18-Robotics on Github
     private JPanel createToolsPanel() {
         JPanel toolsPanel = new JPanel();
-        toolsPanel.setLayout(new GridLayout(7, 1, 2, 2));
+        toolsPanel.setLayout(new GridLayout(8, 1, 2, 2));
         toolsPanel.setBorder(BorderFactory.createTitledBorder("Tools"));
-        toolsPanel.setPreferredSize(new Dimension(50, 250));
+        toolsPanel.setPreferredSize(new Dimension(50, 285));
         
-        toolButtons = new JButton[7];
+        toolButtons = new JButton[8];
         String[] toolNames = {
             "✏",    // Pencil
             "/",    // Line
@@ -1863,7 +2056,8 @@ public class PixelArtMaker {
             "○",    // Oval
             "△",    // Triangle
             "■",    // Fill Rect
-            "●"     // Fill Oval
+            "●",    // Fill Oval
+            "▨"     // Bucket Fill
         };
         
         for (int i = 0; i < toolNames.length; i++) {
@@ -1884,7 +2078,7 @@ public class PixelArtMaker {
     }
     
     private String getToolName(int toolId) {
-        String[] names = {"Pencil", "Line", "Rectangle", "Oval", "Triangle", "Fill Rectangle", "Fill Oval"};
+        String[] names = {"Pencil", "Line", "Rectangle", "Oval", "Triangle", "Fill Rectangle", "Fill Oval", "Bucket Fill"};
         return toolId >= 0 && toolId < names.length ? names[toolId] : "Unknown";
     }
     
@@ -1949,6 +2143,8 @@ class AnimationCanvas extends JPanel {
     private int currentFrameIndex = 0;
     private int cols, rows;
     private int pixelSize;
+    private final FrameImageCache imageCache; // frames rendered once, redrawn with one drawImage
+    private Thread prerender;
 
     public AnimationCanvas(List<AnimationFrame> frames, int cols, int rows) {
         this.frames = frames;
@@ -1958,6 +2154,35 @@ class AnimationCanvas extends JPanel {
         this.pixelSize = Math.min(600 / cols, 600 / rows); // fixed pixel size to fit in 600x600
         if (this.pixelSize < 1) this.pixelSize = 1;
         setPreferredSize(new Dimension(cols * this.pixelSize, rows * this.pixelSize));
+        // Transparent cells stay transparent so the panel background shows through
+        this.imageCache = new FrameImageCache(pixelSize, PixelBuffer.TRANSPARENT, FrameImageCache.DEFAULT_MAX_BYTES);
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        // Render frames ahead of playback while they fit in the cache
+        long imageBytes = 4L * cols * pixelSize * rows * pixelSize;
+        prerender = new Thread(() -> {
+            try {
+                for (int i = 0; i < frames.size() && imageCache.hasRoomFor(imageBytes); i++) {
+                    if (Thread.currentThread().isInterrupted()) return;
+                    imageCache.get(frames, i);
+                }
+            } catch (IndexOutOfBoundsException e) {
+                // Frames were deleted meanwhile; the rest renders on demand
+            }
+        }, "frame-prerender");
+        prerender.setDaemon(true);
+        prerender.setPriority(Thread.MIN_PRIORITY);
+        prerender.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        if (prerender != null) prerender.interrupt();
+        imageCache.clear();
     }
 
     public void setCurrentFrame(int idx) {
@@ -1971,33 +2196,7 @@ class AnimationCanvas extends JPanel {
         Graphics2D g2 = (Graphics2D) g;
 
         if (frames != null && currentFrameIndex >= 0 && currentFrameIndex < frames.size()) {
-            Color[][] frameData = frames.get(currentFrameIndex).data;
-            if (frameData != null && frameData.length > 0) {
-                int ps = this.pixelSize;
-                for (int y = 0; y < frameData.length; y++) {
-                    for (int x = 0; x < frameData[0].length; x++) {
-                        Color c = frameData[y][x];
-                        if (c != null) {
-                            g2.setColor(c);
-                            g2.fillRect(x*ps, y*ps, ps, ps);
-                        }
-                        // Don't draw anything for null pixels - let background show through
-                    }
-                }
-            }
+            g2.drawImage(imageCache.get(frames, currentFrameIndex), 0, 0, null);
         }
     }
 }
-
-class AnimationFrame {
-    Color[][] data;
-    int delay; // milliseconds
-
-    AnimationFrame(Color[][] frameData, int delay) {
-        this.data = new Color[frameData.length][frameData[0].length];
-        for (int y = 0; y < frameData.length; y++)
-            for (int x = 0; x < frameData[0].length; x++)
-                this.data[y][x] = frameData[y][x];
-        this.delay = delay;
-    }
-}
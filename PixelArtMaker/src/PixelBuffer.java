@@ -0,0 +1,118 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * Packed ARGB pixel store used by the editor canvas and the animation frames.
+ * Pixels are kept row-major in a single int array; the value 0 means transparent.
+ */
+public class PixelBuffer {
+    public static final int TRANSPARENT = 0;
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private BufferedImage image;
+
+    /**
+     * Creates a fully transparent buffer.
+     * @param width number of columns
+     * @param height number of rows
+     */
+    public PixelBuffer(int width, int height) {
+        this(width, height, new int[width * height]);
+    }
+
+    /**
+     * Wraps an existing row-major ARGB array without copying it.
+     * @param width number of columns
+     * @param height number of rows
+     * @param pixels the pixel array, at least width * height long
+     */
+    public PixelBuffer(int width, int height, int[] pixels) {
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Pixel array too small for " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    /**
+     * Returns the backing array, row-major, index = y * width + x.
+     * @return the live pixel array (not a copy)
+     */
+    public int[] getPixels() { return pixels; }
+
+    /**
+     * Returns a TYPE_INT_ARGB image that shares this buffer's pixel array, so edits to the
+     * buffer show up in the image without any copying.
+     * @return the 1:1 backing image, created on first use
+     */
+    public BufferedImage getImage() {
+        if (image == null) {
+            DirectColorModel cm = (DirectColorModel) ColorModel.getRGBdefault();
+            DataBufferInt db = new DataBufferInt(pixels, width * height);
+            WritableRaster raster = Raster.createPackedRaster(db, width, height, width, cm.getMasks(), null);
+            image = new BufferedImage(cm, raster, false, null);
+        }
+        return image;
+    }
+
+    public boolean contains(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    public int get(int x, int y) { return pixels[y * width + x]; }
+
+    public void set(int x, int y, int argb) { pixels[y * width + x] = argb; }
+
+    public void clear() { java.util.Arrays.fill(pixels, 0, width * height, TRANSPARENT); }
+
+    public PixelBuffer copy() {
+        int[] copy = new int[width * height];
+        System.arraycopy(pixels, 0, copy, 0, copy.length);
+        return new PixelBuffer(width, height, copy);
+    }
+
+    /**
+     * Returns a new buffer of the given size holding the overlapping top-left region of this one.
+     * @param newWidth columns of the new buffer
+     * @param newHeight rows of the new buffer
+     * @return the resized copy
+     */
+    public PixelBuffer resized(int newWidth, int newHeight) {
+        PixelBuffer out = new PixelBuffer(newWidth, newHeight);
+        int w = Math.min(width, newWidth);
+        int h = Math.min(height, newHeight);
+        for (int y = 0; y < h; y++) {
+            System.arraycopy(pixels, y * width, out.pixels, y * newWidth, w);
+        }
+        return out;
+    }
+
+    /**
+     * Converts a palette color to the packed form, dropping its alpha so painted pixels are opaque.
+     * @param c the color, or null for transparent
+     * @return packed ARGB value
+     */
+    public static int toArgb(Color c) {
+        return c == null ? TRANSPARENT : (c.getRGB() | 0xFF000000);
+    }
+
+    /**
+     * Converts a packed pixel back to a Color.
+     * @param argb packed ARGB value
+     * @return the color, or null when the pixel is transparent
+     */
+    public static Color toColor(int argb) {
+        return argb == TRANSPARENT ? null : new Color(argb, true);
+    }
+}
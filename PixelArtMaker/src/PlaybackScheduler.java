@@ -0,0 +1,273 @@
+import javax.swing.SwingUtilities;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+/**
+ * Plays animation frames against a System.nanoTime timeline.
+ * Each frame is due at the previous frame's due time plus its delay, never at "now plus
+ * delay", so sleep jitter and slow paints do not add up over a long playback. When the
+ * timer thread wakes up so late that the next frame's time has already passed too, the
+ * frames in between are skipped. Frames are shown on the event dispatch thread; if the EDT
+ * has not shown the last frame yet, the newer one replaces it and the older one counts as
+ * dropped. Lateness is measured when a frame actually reaches the EDT.
+ */
+public class PlaybackScheduler {
+    /** Delay used for frames that have none. */
+    public static final int DEFAULT_DELAY_MS = 100;
+
+    private final List<AnimationFrame> frames;
+    private final IntConsumer display;
+    private final Object lock = new Object();
+
+    // Guarded by lock
+    private int[] delays = new int[0];
+    private int loopDelay;
+    private boolean loop = true;
+    private boolean playing;
+    private boolean stopped;
+    private int index;
+    private long deadline; // nanoTime the next frame is due
+    private Thread thread;
+    private Runnable stateListener;
+
+    // Frame handed to the EDT but not shown yet
+    private final AtomicReference<Tick> pending = new AtomicReference<>();
+
+    // Statistics: dropped is counted under lock, the rest on the EDT
+    private volatile long shown, dropped;
+    private volatile long totalLateNanos, maxLateNanos;
+
+    /**
+     * A frame on its way to the EDT and the nanoTime it was due.
+     */
+    private static final class Tick {
+        final int index;
+        final long due;
+
+        Tick(int index, long due) {
+            this.index = index;
+            this.due = due;
+        }
+    }
+
+    /**
+     * @param frames the frames; their delays are read when playback starts or seeks
+     * @param loopDelay extra pause after the last frame before looping, in milliseconds
+     * @param display shows a frame index; called on the event dispatch thread
+     */
+    public PlaybackScheduler(List<AnimationFrame> frames, int loopDelay, IntConsumer display) {
+        this.frames = frames;
+        this.loopDelay = Math.max(0, loopDelay);
+        this.display = display;
+    }
+
+    /**
+     * Called on the event dispatch thread after playback starts, pauses or reaches the end.
+     */
+    public void setStateListener(Runnable listener) {
+        synchronized (lock) { this.stateListener = listener; }
+    }
+
+    public void setLoop(boolean loop) {
+        synchronized (lock) { this.loop = loop; }
+    }
+
+    public boolean isLooping() {
+        synchronized (lock) { return loop; }
+    }
+
+    public boolean isPlaying() {
+        synchronized (lock) { return playing; }
+    }
+
+    public int getFrameIndex() {
+        synchronized (lock) { return index; }
+    }
+
+    /**
+     * Starts or resumes playback from the current frame. At the end of a non-looping
+     * playback it starts over from the first frame.
+     */
+    public void play() {
+        synchronized (lock) {
+            if (stopped || playing) return;
+            readDelays();
+            if (delays.length == 0) return;
+            if (index >= delays.length || (!loop && index == delays.length - 1)) index = 0;
+            playing = true;
+            resetStats();
+            startFrame(index, System.nanoTime());
+            if (thread == null) {
+                thread = new Thread(this::run, "animation-playback");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            lock.notifyAll();
+        }
+        fireStateChanged();
+    }
+
+    public void pause() {
+        synchronized (lock) {
+            if (!playing) return;
+            playing = false;
+            lock.notifyAll();
+        }
+        fireStateChanged();
+    }
+
+    /**
+     * Shows a frame now; if playing, the timeline restarts from it.
+     * @param frameIndex frame to show
+     */
+    public void seek(int frameIndex) {
+        synchronized (lock) {
+            if (stopped) return;
+            readDelays();
+            if (delays.length == 0) return;
+            startFrame(Math.max(0, Math.min(delays.length - 1, frameIndex)), System.nanoTime());
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Ends playback for good and lets the timer thread exit.
+     */
+    public void stop() {
+        synchronized (lock) {
+            stopped = true;
+            playing = false;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return frames shown since playback last started
+     */
+    public long getFramesShown() { return shown; }
+
+    /**
+     * @return frames skipped or replaced before the EDT showed them
+     */
+    public long getFramesDropped() { return dropped; }
+
+    /**
+     * @return mean time between a frame being due and it being shown, in milliseconds
+     */
+    public double getAverageLatenessMs() {
+        long n = shown;
+        return n == 0 ? 0 : totalLateNanos / 1e6 / n;
+    }
+
+    /**
+     * @return worst time between a frame being due and it being shown, in milliseconds
+     */
+    public double getMaxLatenessMs() { return maxLateNanos / 1e6; }
+
+    private void run() {
+        try {
+            while (true) {
+                synchronized (lock) {
+                    while (!playing && !stopped) lock.wait();
+                    if (stopped) return;
+                    long now = System.nanoTime();
+                    long wait = deadline - now;
+                    if (wait > 0) {
+                        lock.wait(wait / 1000000, (int) (wait % 1000000));
+                        continue;
+                    }
+                    advance(now);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Interrupting the timer thread ends playback the same way stop() does
+        }
+    }
+
+    /**
+     * Moves to the frame that should be showing at time now. Called with lock held once
+     * the current frame's deadline has passed.
+     */
+    private void advance(long now) {
+        int n = delays.length;
+        if (index == n - 1 && !loop) {
+            // Hold the last frame and stop
+            playing = false;
+            SwingUtilities.invokeLater(this::fireStateChanged);
+            return;
+        }
+        int next = index;
+        long start = deadline;
+        for (int skipped = 0; ; skipped++) {
+            next = (next + 1) % n;
+            long end = start + duration(next);
+            // Never skip past the last frame of a playback that does not loop
+            if (end > now || (next == n - 1 && !loop)) break;
+            if (skipped >= n) {
+                // More than a whole loop behind (e.g. the machine slept): restart the timeline
+                start = now;
+                break;
+            }
+            start = end;
+            dropped++;
+        }
+        startFrame(next, start);
+    }
+
+    private void startFrame(int frameIndex, long start) {
+        index = frameIndex;
+        deadline = start + duration(frameIndex);
+        post(frameIndex, start);
+    }
+
+    // Nanoseconds a frame stays up, counting the loop delay after the last one
+    private long duration(int frameIndex) {
+        long ms = delays[frameIndex] > 0 ? delays[frameIndex] : DEFAULT_DELAY_MS;
+        if (frameIndex == delays.length - 1) ms += loopDelay;
+        return ms * 1000000L;
+    }
+
+    /**
+     * Hands a frame to the EDT. Only one task is queued at a time; a frame that arrives
+     * while one is waiting replaces it.
+     */
+    private void post(int frameIndex, long due) {
+        if (pending.getAndSet(new Tick(frameIndex, due)) != null) {
+            dropped++;
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            Tick tick = pending.getAndSet(null);
+            if (tick == null) return;
+            long late = System.nanoTime() - tick.due;
+            if (late > 0) {
+                totalLateNanos += late;
+                if (late > maxLateNanos) maxLateNanos = late;
+            }
+            shown++;
+            display.accept(tick.index);
+        });
+    }
+
+    private void readDelays() {
+        int n = frames.size();
+        if (delays.length != n) delays = new int[n];
+        for (int i = 0; i < n; i++) delays[i] = IndexedFrameList.delay(frames, i);
+    }
+
+    private void resetStats() {
+        shown = 0;
+        dropped = 0;
+        totalLateNanos = 0;
+        maxLateNanos = 0;
+    }
+
+    private void fireStateChanged() {
+        Runnable listener;
+        synchronized (lock) { listener = stateListener; }
+        if (listener == null) return;
+        if (SwingUtilities.isEventDispatchThread()) listener.run();
+        else SwingUtilities.invokeLater(listener);
+    }
+}
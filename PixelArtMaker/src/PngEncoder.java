@@ -0,0 +1,352 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Small PNG writer for 8-bit RGB/RGBA and 1-8 bit palette images.
+ * Rows are pulled from a RowSource, filtered and deflated in one pass, so an image never
+ * has to exist as a BufferedImage. An encoder keeps its row buffers and Deflater between
+ * images, so give each thread its own instance (the copy constructor carries the
+ * settings over) and call end() when done with it. The chunk helpers are shared with the
+ * APNG writer.
+ */
+public class PngEncoder {
+    public static final int FILTER_NONE = 0;
+    public static final int FILTER_SUB = 1;
+    public static final int FILTER_UP = 2;
+    public static final int FILTER_AVERAGE = 3;
+    public static final int FILTER_PAETH = 4;
+    /** Pick the filter per row that gives the smallest sum of absolute byte values. */
+    public static final int FILTER_ADAPTIVE = -1;
+
+    public static final int COLOR_RGB = 2;
+    public static final int COLOR_INDEXED = 3;
+    public static final int COLOR_RGBA = 6;
+
+    static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int filter = FILTER_ADAPTIVE;
+    private boolean indexed = false;
+
+    // Scratch state reused from image to image
+    private byte[] prior = new byte[0];
+    private byte[] current = new byte[0];
+    private byte[][] candidates = new byte[5][1];
+    private byte[] deflateBuffer = new byte[1 << 14];
+    private byte[] output = new byte[1 << 12];
+    private int outputSize;
+    private Deflater deflater;
+    private int deflaterLevel;
+    private final ColorPalette palette = new ColorPalette();
+
+    /**
+     * Supplies the unfiltered bytes of one image row.
+     */
+    public interface RowSource {
+        /**
+         * @param y row index
+         * @param row destination for one row in the image's pixel format
+         */
+        void getRow(int y, byte[] row);
+    }
+
+    public PngEncoder() {}
+
+    /**
+     * Creates an encoder with the same settings, e.g. one per worker thread.
+     * @param settings encoder to copy the settings of
+     */
+    public PngEncoder(PngEncoder settings) {
+        this.compressionLevel = settings.compressionLevel;
+        this.filter = settings.filter;
+        this.indexed = settings.indexed;
+    }
+
+    /**
+     * @param level deflate level 0-9, or Deflater.DEFAULT_COMPRESSION
+     */
+    public void setCompressionLevel(int level) { this.compressionLevel = level; }
+
+    public int getCompressionLevel() { return compressionLevel; }
+
+    /**
+     * @param filter one of the FILTER_ constants
+     */
+    public void setFilter(int filter) { this.filter = filter; }
+
+    public int getFilter() { return filter; }
+
+    /**
+     * @param indexed whether write(int[]...) should store images with at most 256 colors as palette PNGs
+     */
+    public void setIndexed(boolean indexed) { this.indexed = indexed; }
+
+    public boolean isIndexed() { return indexed; }
+
+    /**
+     * Frees the Deflater's native memory now instead of whenever it is garbage collected.
+     * The encoder can still be used afterwards; it then creates a new Deflater.
+     */
+    public void end() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+    }
+
+    /**
+     * Writes a complete PNG from packed ARGB pixels. With indexed output enabled and at
+     * most 256 distinct colors the image is stored as a palette PNG with the smallest bit
+     * depth that fits; otherwise as RGB, or RGBA when alpha is requested.
+     * @param out destination, left open
+     * @param argb row-major pixels
+     * @param width image width
+     * @param height image height
+     * @param alpha whether transparency must be kept
+     * @throws IOException if writing fails
+     */
+    public void write(OutputStream out, int[] argb, int width, int height, boolean alpha) throws IOException {
+        if (indexed && buildPalette(argb, width * height, alpha)) {
+            writeIndexed(out, argb, width, height);
+            return;
+        }
+        int colorType = alpha ? COLOR_RGBA : COLOR_RGB;
+        int bpp = alpha ? 4 : 3;
+        out.write(SIGNATURE);
+        writeChunk(out, "IHDR", header(width, height, 8, colorType));
+        compressRows(width * bpp, bpp, height, (y, row) -> {
+            int o = 0;
+            for (int i = y * width, end = i + width; i < end; i++) {
+                int c = argb[i];
+                row[o++] = (byte) (c >> 16);
+                row[o++] = (byte) (c >> 8);
+                row[o++] = (byte) c;
+                if (alpha) row[o++] = (byte) (c >>> 24);
+            }
+        });
+        writeChunk(out, "IDAT", output, outputSize);
+        writeChunk(out, "IEND", new byte[0], 0);
+    }
+
+    private boolean buildPalette(int[] argb, int n, boolean alpha) {
+        palette.clear();
+        int last = 0;
+        for (int i = 0; i < n; i++) {
+            int c = alpha ? argb[i] : argb[i] | 0xFF000000;
+            if (i > 0 && c == last) continue;
+            last = c;
+            palette.add(c);
+            if (palette.size() > 256) return false;
+        }
+        return true;
+    }
+
+    private void writeIndexed(OutputStream out, int[] argb, int width, int height) throws IOException {
+        int colors = palette.size();
+        int depth = colors <= 2 ? 1 : colors <= 4 ? 2 : colors <= 16 ? 4 : 8;
+        byte[] plte = new byte[colors * 3];
+        int lastTranslucent = -1;
+        for (int i = 0; i < colors; i++) {
+            int c = palette.get(i);
+            plte[i * 3] = (byte) (c >> 16);
+            plte[i * 3 + 1] = (byte) (c >> 8);
+            plte[i * 3 + 2] = (byte) c;
+            if ((c >>> 24) != 0xFF) lastTranslucent = i;
+        }
+        out.write(SIGNATURE);
+        writeChunk(out, "IHDR", header(width, height, depth, COLOR_INDEXED));
+        writeChunk(out, "PLTE", plte);
+        if (lastTranslucent >= 0) {
+            byte[] trns = new byte[lastTranslucent + 1];
+            for (int i = 0; i < trns.length; i++) trns[i] = (byte) (palette.get(i) >>> 24);
+            writeChunk(out, "tRNS", trns);
+        }
+        int pixelsPerByte = 8 / depth;
+        boolean opaque = lastTranslucent < 0;
+        compressRows((width + pixelsPerByte - 1) / pixelsPerByte, 1, height, (y, row) -> {
+            Arrays.fill(row, (byte) 0);
+            int lastColor = 0, lastIndex = -1;
+            for (int x = 0, i = y * width; x < width; x++, i++) {
+                int c = opaque ? argb[i] | 0xFF000000 : argb[i];
+                // Scaled pixel art repeats colors in runs, so skip the hash lookup for those
+                if (lastIndex < 0 || c != lastColor) {
+                    lastColor = c;
+                    lastIndex = palette.indexOf(c);
+                }
+                int index = lastIndex;
+                int shift = 8 - depth - (x % pixelsPerByte) * depth;
+                row[x / pixelsPerByte] |= (byte) (index << shift);
+            }
+        });
+        writeChunk(out, "IDAT", output, outputSize);
+        writeChunk(out, "IEND", new byte[0], 0);
+    }
+
+    /**
+     * Filters and deflates 8-bit RGB or RGBA rows into the zlib stream that IDAT or fdAT
+     * chunks carry.
+     * @param width image width
+     * @param height image height
+     * @param colorType COLOR_RGB or COLOR_RGBA
+     * @param rows supplies the pixel rows
+     * @return the compressed image data
+     */
+    public byte[] compress(int width, int height, int colorType, RowSource rows) {
+        int bpp = colorType == COLOR_RGBA ? 4 : 3;
+        compressRows(width * bpp, bpp, height, rows);
+        return Arrays.copyOf(output, outputSize);
+    }
+
+    /**
+     * Filters and deflates rows into the output buffer.
+     * @param rowBytes bytes per unfiltered row
+     * @param bpp bytes per complete pixel (1 for palette images), used by the filters
+     * @param height number of rows
+     * @param rows supplies the pixel rows
+     */
+    private void compressRows(int rowBytes, int bpp, int height, RowSource rows) {
+        if (prior.length != rowBytes) {
+            prior = new byte[rowBytes];
+            current = new byte[rowBytes];
+            candidates = new byte[5][1 + rowBytes];
+        } else {
+            Arrays.fill(prior, (byte) 0);
+        }
+        if (deflater == null || deflaterLevel != compressionLevel) {
+            if (deflater != null) deflater.end();
+            deflater = new Deflater(compressionLevel);
+            deflaterLevel = compressionLevel;
+        } else {
+            deflater.reset();
+        }
+        outputSize = 0;
+        for (int y = 0; y < height; y++) {
+            rows.getRow(y, current);
+            byte[] line = filterRow(current, prior, bpp);
+            deflater.setInput(line, 0, line.length);
+            while (!deflater.needsInput()) drain();
+            byte[] t = prior;
+            prior = current;
+            current = t;
+        }
+        deflater.finish();
+        while (!deflater.finished()) drain();
+    }
+
+    private void drain() {
+        int n = deflater.deflate(deflateBuffer);
+        if (outputSize + n > output.length) output = Arrays.copyOf(output, Math.max(output.length * 2, outputSize + n));
+        System.arraycopy(deflateBuffer, 0, output, outputSize, n);
+        outputSize += n;
+    }
+
+    private byte[] filterRow(byte[] row, byte[] prior, int bpp) {
+        if (filter != FILTER_ADAPTIVE) {
+            applyFilter(filter, row, prior, bpp, candidates[filter]);
+            return candidates[filter];
+        }
+        int best = 0;
+        long bestSum = Long.MAX_VALUE;
+        for (int f = FILTER_NONE; f <= FILTER_PAETH; f++) {
+            long sum = applyFilter(f, row, prior, bpp, candidates[f]);
+            if (sum < bestSum) {
+                bestSum = sum;
+                best = f;
+            }
+        }
+        return candidates[best];
+    }
+
+    /**
+     * Filters one row into out (filter type byte first).
+     * @return sum of the filtered bytes taken as signed magnitudes, the usual heuristic
+     */
+    private static long applyFilter(int type, byte[] row, byte[] prior, int bpp, byte[] out) {
+        out[0] = (byte) type;
+        int n = row.length;
+        switch (type) {
+            case FILTER_SUB:
+                System.arraycopy(row, 0, out, 1, Math.min(bpp, n));
+                for (int i = bpp; i < n; i++) out[i + 1] = (byte) (row[i] - row[i - bpp]);
+                break;
+            case FILTER_UP:
+                for (int i = 0; i < n; i++) out[i + 1] = (byte) (row[i] - prior[i]);
+                break;
+            case FILTER_AVERAGE:
+                for (int i = 0; i < n; i++) {
+                    int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                    out[i + 1] = (byte) (row[i] - ((a + (prior[i] & 0xFF)) >> 1));
+                }
+                break;
+            case FILTER_PAETH:
+                for (int i = 0; i < n; i++) {
+                    int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                    int c = i >= bpp ? prior[i - bpp] & 0xFF : 0;
+                    out[i + 1] = (byte) (row[i] - paeth(a, prior[i] & 0xFF, c));
+                }
+                break;
+            default:
+                System.arraycopy(row, 0, out, 1, n);
+                break;
+        }
+        long sum = 0;
+        for (int i = 1; i <= n; i++) sum += Math.abs((int) out[i]);
+        return sum;
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) return a;
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * @return IHDR contents for a non-interlaced image
+     */
+    static byte[] header(int width, int height, int bitDepth, int colorType) {
+        byte[] data = new byte[13];
+        putInt(data, 0, width);
+        putInt(data, 4, height);
+        data[8] = (byte) bitDepth;
+        data[9] = (byte) colorType;
+        // compression, filter and interlace methods stay 0
+        return data;
+    }
+
+    /**
+     * Writes a chunk: length, type, data and the CRC over type and data.
+     */
+    static void writeChunk(OutputStream out, String type, byte[] data) throws IOException {
+        writeChunk(out, type, data, data.length);
+    }
+
+    static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] head = new byte[8];
+        putInt(head, 0, length);
+        for (int i = 0; i < 4; i++) head[4 + i] = (byte) type.charAt(i);
+        CRC32 crc = new CRC32();
+        crc.update(head, 4, 4);
+        crc.update(data, 0, length);
+        byte[] tail = new byte[4];
+        putInt(tail, 0, (int) crc.getValue());
+        out.write(head);
+        out.write(data, 0, length);
+        out.write(tail);
+    }
+
+    static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    static void putShort(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 8);
+        b[off + 1] = (byte) v;
+    }
+}
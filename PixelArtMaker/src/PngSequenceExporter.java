@@ -0,0 +1,109 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Writes each animation frame to its own numbered PNG file.
+ * Frames are rendered and encoded concurrently on a bounded worker pool; each worker keeps
+ * its own pixel buffer and PngEncoder, so steady-state export allocates almost nothing per
+ * frame. Files are named frame_00000.png, frame_00001.png, ... as before.
+ */
+public class PngSequenceExporter {
+    public static final String DEFAULT_NAME_PATTERN = "frame_%05d.png";
+
+    private final List<AnimationFrame> frames;
+    private final int pixelSize;
+    private final int backgroundArgb;
+    private final boolean alpha;
+    private final PngEncoder encoder = new PngEncoder();
+    private final Queue<PngEncoder> workerEncoders = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<PngEncoder> workerEncoder = ThreadLocal.withInitial(() -> {
+        PngEncoder e = new PngEncoder(encoder);
+        workerEncoders.add(e);
+        return e;
+    });
+    private final ThreadLocal<int[]> workerPixels = ThreadLocal.withInitial(() -> new int[0]);
+    private String namePattern = DEFAULT_NAME_PATTERN;
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * @param frames the frames to export
+     * @param pixelSize output pixels per canvas cell
+     * @param backgroundMode 0=white, 1=black, 2=transparent
+     */
+    public PngSequenceExporter(List<AnimationFrame> frames, int pixelSize, int backgroundMode) {
+        this.frames = frames;
+        this.pixelSize = Math.max(1, pixelSize);
+        this.alpha = backgroundMode == 2;
+        this.backgroundArgb = FrameRasterizer.backgroundArgb(backgroundMode);
+        encoder.setIndexed(true);
+    }
+
+    public void setThreads(int threads) { this.threads = Math.max(1, threads); }
+
+    /**
+     * @param namePattern String.format pattern taking the frame index
+     */
+    public void setNamePattern(String namePattern) { this.namePattern = namePattern; }
+
+    /**
+     * @return the encoder settings (compression level, filter, indexed output) used for every file;
+     *         indexed output is on by default
+     */
+    public PngEncoder getEncoder() { return encoder; }
+
+    /**
+     * Writes all frames into the directory. A cancelled or failed export removes the files it
+     * wrote, after the workers have stopped.
+     * @param dir destination directory
+     * @param progress receives a call per finished frame and is polled for cancellation
+     * @return true if every frame was written, false if the export was cancelled
+     * @throws IOException if a file cannot be written
+     */
+    public boolean export(File dir, ExportProgress progress) throws IOException {
+        int total = frames.size();
+        if (total == 0) throw new IOException("No animation frames to export");
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create directory " + dir);
+
+        Queue<File> written = new ConcurrentLinkedQueue<>();
+        boolean finished = false;
+        try {
+            finished = FramePipeline.run(total, threads, "png-export",
+                    index -> () -> writeFrame(dir, index, written),
+                    file -> { },
+                    progress);
+            return finished;
+        } finally {
+            // The workers have stopped, so their encoders can be released
+            for (PngEncoder e : workerEncoders) e.end();
+            workerEncoders.clear();
+            if (!finished) {
+                for (File f : written) f.delete();
+            }
+        }
+    }
+
+    private File writeFrame(File dir, int index, Queue<File> written) throws IOException {
+        PixelBuffer data = frames.get(index).data;
+        int cols = data.getWidth(), rows = data.getHeight();
+        int width = cols * pixelSize, height = rows * pixelSize;
+        int[] pixels = workerPixels.get();
+        if (pixels.length < width * height) {
+            pixels = new int[width * height];
+            workerPixels.set(pixels);
+        }
+        FrameRasterizer.render(data, pixelSize, backgroundArgb, pixels, 0, width);
+
+        File file = new File(dir, String.format(namePattern, index));
+        written.add(file);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            workerEncoder.get().write(out, pixels, width, height, alpha);
+        }
+        return file;
+    }
+}
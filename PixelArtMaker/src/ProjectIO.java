@@ -0,0 +1,371 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads and writes .pam project files.
+ *
+ * Version 2 is a binary format:
+ * <pre>
+ *   "PAM2" magic, short version, byte compression
+ *   int cols, rows, pixelSize, backgroundMode, loopDelay, currentFrame, frameCount
+ *   int delay[frameCount]
+ *   deflate: zlib stream of int paletteSize, int palette[paletteSize],
+ *            canvas indices, then the indices of every frame (cols*rows each)
+ *   stored:  canvas ARGB ints, then the ARGB ints of every frame (cols*rows each)
+ * </pre>
+ * Indices are 1, 2 or 4 bytes wide depending on the palette size. Frames are stored at
+ * the canvas size. Stored files have fixed frame offsets, so large animations can be
+ * opened as a MappedFrameList instead of being loaded onto the heap; smaller ones are
+ * loaded into an IndexedFrameList. The old plain-text
+ * format (header line plus one line of hex colors per row) can still be read.
+ */
+public class ProjectIO {
+    static final byte[] MAGIC = {'P', 'A', 'M', '2'};
+    static final int VERSION = 2;
+    public static final int COMPRESSION_STORED = 0;
+    public static final int COMPRESSION_DEFLATE = 1;
+
+    /** Animations whose raw frames exceed this many bytes are opened memory-mapped. */
+    public static final long MAP_THRESHOLD_BYTES = 128L * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int FIXED_HEADER_SIZE = MAGIC.length + 2 + 1 + 7 * 4;
+
+    /**
+     * Everything stored in a project file.
+     */
+    public static class Project {
+        public int cols, rows, pixelSize;
+        public int backgroundMode;
+        public int loopDelay;
+        public int currentFrame;
+        public PixelBuffer canvas;
+        /** Animation frames, or null when the file predates frame support. */
+        public List<AnimationFrame> frames;
+    }
+
+    public static void write(File f, Project p) throws IOException {
+        write(f, p, COMPRESSION_DEFLATE);
+    }
+
+    /**
+     * Writes a project. Frames are fetched one at a time, so a lazily backed frame list is
+     * never fully paged in.
+     * @param f target file
+     * @param p the project
+     * @param compression COMPRESSION_DEFLATE or COMPRESSION_STORED
+     * @throws IOException if writing fails
+     */
+    public static void write(File f, Project p, int compression) throws IOException {
+        List<AnimationFrame> frames = p.frames != null ? p.frames : new ArrayList<>();
+        int frameCount = frames.size();
+        int[] delays = new int[frameCount];
+        for (int i = 0; i < frameCount; i++) delays[i] = frames.get(i).delay;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), BUFFER_SIZE))) {
+            writeHeader(out, p, compression, delays);
+            if (compression == COMPRESSION_STORED) {
+                byte[] row = new byte[p.cols * 4];
+                writeArgb(out, rasterOf(p.canvas, p.cols, p.rows), p.cols, p.rows, row);
+                for (int i = 0; i < frameCount; i++) writeArgb(out, rasterOf(frames.get(i).data, p.cols, p.rows), p.cols, p.rows, row);
+                return;
+            }
+
+            // Build one palette for the canvas and all frames
+            ColorPalette palette = new ColorPalette();
+            palette.add(PixelBuffer.TRANSPARENT);
+            addColors(palette, rasterOf(p.canvas, p.cols, p.rows));
+            for (int i = 0; i < frameCount; i++) addColors(palette, rasterOf(frames.get(i).data, p.cols, p.rows));
+            int width = indexWidth(palette.size());
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                DeflaterOutputStream zout = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+                DataOutputStream z = new DataOutputStream(zout);
+                z.writeInt(palette.size());
+                for (int i = 0; i < palette.size(); i++) z.writeInt(palette.get(i));
+                byte[] row = new byte[p.cols * width];
+                writeIndices(z, rasterOf(p.canvas, p.cols, p.rows), p.cols, p.rows, palette, width, row);
+                for (int i = 0; i < frameCount; i++) {
+                    writeIndices(z, rasterOf(frames.get(i).data, p.cols, p.rows), p.cols, p.rows, palette, width, row);
+                }
+                z.flush();
+                zout.finish();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    public static Project read(File f) throws IOException {
+        return read(f, MAP_THRESHOLD_BYTES);
+    }
+
+    /**
+     * Reads a project. Binary projects whose frames take more than mapThreshold bytes get a
+     * MappedFrameList: stored files are mapped directly, compressed ones are first unpacked
+     * into a temporary stored file.
+     * @param f the project file
+     * @param mapThreshold raw frame bytes above which frames are memory-mapped
+     * @return the project
+     * @throws IOException if the file cannot be read or is corrupt
+     */
+    public static Project read(File f, long mapThreshold) throws IOException {
+        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(f), BUFFER_SIZE)) {
+            in.mark(MAGIC.length);
+            byte[] head = new byte[MAGIC.length];
+            int got = 0;
+            while (got < head.length) {
+                int r = in.read(head, got, head.length - got);
+                if (r < 0) break;
+                got += r;
+            }
+            in.reset();
+            if (got == MAGIC.length && java.util.Arrays.equals(head, MAGIC)) {
+                return readBinary(f, new DataInputStream(in), mapThreshold);
+            }
+            try {
+                return readText(new BufferedReader(new InputStreamReader(in)));
+            } catch (NumberFormatException ex) {
+                throw new IOException("Invalid project file: " + ex.getMessage());
+            }
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, Project p, int compression, int[] delays) throws IOException {
+        out.write(MAGIC);
+        out.writeShort(VERSION);
+        out.writeByte(compression);
+        out.writeInt(p.cols);
+        out.writeInt(p.rows);
+        out.writeInt(p.pixelSize);
+        out.writeInt(p.backgroundMode);
+        out.writeInt(p.loopDelay);
+        out.writeInt(p.currentFrame);
+        out.writeInt(delays.length);
+        for (int delay : delays) out.writeInt(delay);
+    }
+
+    private static Project readBinary(File f, DataInputStream in, long mapThreshold) throws IOException {
+        in.skipBytes(MAGIC.length);
+        int version = in.readUnsignedShort();
+        if (version != VERSION) throw new IOException("Unsupported project version " + version);
+        int compression = in.readUnsignedByte();
+        if (compression != COMPRESSION_DEFLATE && compression != COMPRESSION_STORED) {
+            throw new IOException("Unsupported compression " + compression);
+        }
+        Project p = new Project();
+        p.cols = in.readInt();
+        p.rows = in.readInt();
+        p.pixelSize = in.readInt();
+        p.backgroundMode = in.readInt();
+        p.loopDelay = in.readInt();
+        p.currentFrame = in.readInt();
+        int frameCount = in.readInt();
+        if (p.cols <= 0 || p.rows <= 0 || frameCount < 0) throw new IOException("Corrupt project header");
+        int[] delays = new int[frameCount];
+        for (int i = 0; i < frameCount; i++) delays[i] = in.readInt();
+        long bodyOffset = FIXED_HEADER_SIZE + 4L * frameCount;
+        long frameBytes = 4L * p.cols * p.rows;
+        boolean mapped = frameBytes * frameCount > mapThreshold;
+
+        if (compression == COMPRESSION_STORED) {
+            byte[] row = new byte[p.cols * 4];
+            p.canvas = readArgb(in, p.cols, p.rows, row);
+            if (mapped) {
+                p.frames = new MappedFrameList(f, p.cols, p.rows, bodyOffset + frameBytes, delays, false);
+            } else {
+                IndexedFrameList frames = new IndexedFrameList();
+                for (int i = 0; i < frameCount; i++) frames.add(readArgb(in, p.cols, p.rows, row), delays[i]);
+                p.frames = frames;
+            }
+            return p;
+        }
+
+        DataInputStream z = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in), BUFFER_SIZE));
+        int paletteSize = z.readInt();
+        if (paletteSize <= 0) throw new IOException("Corrupt project palette");
+        int[] palette = new int[paletteSize];
+        for (int i = 0; i < paletteSize; i++) palette[i] = z.readInt();
+        int width = indexWidth(paletteSize);
+        byte[] row = new byte[p.cols * width];
+
+        p.canvas = readIndices(z, p.cols, p.rows, palette, width, row);
+        if (mapped) {
+            p.frames = unpackToMappedFile(p, z, palette, width, row, delays);
+        } else {
+            IndexedFrameList frames = new IndexedFrameList();
+            for (int i = 0; i < frameCount; i++) {
+                frames.add(readIndices(z, p.cols, p.rows, palette, width, row), delays[i]);
+            }
+            p.frames = frames;
+        }
+        return p;
+    }
+
+    // Decodes the frames one by one into a temporary stored file and maps it
+    private static MappedFrameList unpackToMappedFile(Project p, DataInputStream z, int[] palette, int width,
+                                                      byte[] row, int[] delays) throws IOException {
+        File temp = File.createTempFile("pixelartmaker_frames", ".pam");
+        temp.deleteOnExit();
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE))) {
+                writeHeader(out, p, COMPRESSION_STORED, delays);
+                byte[] argbRow = new byte[p.cols * 4];
+                writeArgb(out, p.canvas.getPixels(), p.cols, p.rows, argbRow);
+                for (int i = 0; i < delays.length; i++) {
+                    writeArgb(out, readIndices(z, p.cols, p.rows, palette, width, row).getPixels(), p.cols, p.rows, argbRow);
+                }
+            }
+            long frameBytes = 4L * p.cols * p.rows;
+            return new MappedFrameList(temp, p.cols, p.rows, FIXED_HEADER_SIZE + 4L * delays.length + frameBytes, delays, true);
+        } catch (IOException ex) {
+            temp.delete();
+            throw ex;
+        }
+    }
+
+    // Legacy text format: "<cols> <rows> <pixelSize>" then one line of hex colors per row
+    private static Project readText(BufferedReader br) throws IOException {
+        String header = br.readLine();
+        if (header == null) throw new IOException("Empty file");
+        String[] parts = header.trim().split("\\s+");
+        if (parts.length < 3) throw new IOException("Invalid project header");
+        Project p = new Project();
+        p.cols = Integer.parseInt(parts[0]);
+        p.rows = Integer.parseInt(parts[1]);
+        p.pixelSize = Integer.parseInt(parts[2]);
+        PixelBuffer grid = new PixelBuffer(p.cols, p.rows);
+        for (int y = 0; y < p.rows; y++) {
+            String line = br.readLine();
+            if (line == null) throw new IOException("Unexpected EOF");
+            int pos = 0, len = line.length();
+            for (int x = 0; x < p.cols; x++) {
+                while (pos < len && Character.isWhitespace(line.charAt(pos))) pos++;
+                int start = pos;
+                while (pos < len && !Character.isWhitespace(line.charAt(pos))) pos++;
+                if (start == pos) throw new IOException("Missing color at row " + y + ", column " + x);
+                grid.set(x, y, parseLegacyColor(line, start, pos));
+            }
+        }
+        p.canvas = grid;
+        return p;
+    }
+
+    private static int parseLegacyColor(String line, int start, int end) {
+        String token = line.substring(start, end);
+        if (token.equalsIgnoreCase("#00000000") || token.equalsIgnoreCase("null")) return PixelBuffer.TRANSPARENT;
+        if (token.charAt(0) == '#' && token.length() == 7) {
+            return Integer.parseInt(token.substring(1), 16) | 0xFF000000;
+        }
+        return PixelBuffer.toArgb(java.awt.Color.decode(token));
+    }
+
+    private static void addColors(ColorPalette palette, int[] raster) {
+        int last = PixelBuffer.TRANSPARENT;
+        for (int argb : raster) {
+            if (argb != last) { palette.add(argb); last = argb; }
+        }
+    }
+
+    private static int[] rasterOf(PixelBuffer buffer, int cols, int rows) {
+        if (buffer.getWidth() == cols && buffer.getHeight() == rows) return buffer.getPixels();
+        return buffer.resized(cols, rows).getPixels();
+    }
+
+    private static int indexWidth(int paletteSize) {
+        if (paletteSize <= 0x100) return 1;
+        if (paletteSize <= 0x10000) return 2;
+        return 4;
+    }
+
+    private static void writeIndices(DataOutputStream out, int[] raster, int cols, int rows,
+                                     ColorPalette palette, int width, byte[] row) throws IOException {
+        int lastArgb = PixelBuffer.TRANSPARENT, lastIndex = palette.indexOf(PixelBuffer.TRANSPARENT);
+        for (int y = 0; y < rows; y++) {
+            int base = y * cols;
+            for (int x = 0; x < cols; x++) {
+                int argb = raster[base + x];
+                if (argb != lastArgb) { lastIndex = palette.indexOf(argb); lastArgb = argb; }
+                int o = x * width;
+                switch (width) {
+                    case 1:
+                        row[o] = (byte) lastIndex;
+                        break;
+                    case 2:
+                        row[o] = (byte) (lastIndex >>> 8);
+                        row[o + 1] = (byte) lastIndex;
+                        break;
+                    default:
+                        row[o] = (byte) (lastIndex >>> 24);
+                        row[o + 1] = (byte) (lastIndex >>> 16);
+                        row[o + 2] = (byte) (lastIndex >>> 8);
+                        row[o + 3] = (byte) lastIndex;
+                }
+            }
+            out.write(row, 0, cols * width);
+        }
+    }
+
+    private static void writeArgb(DataOutputStream out, int[] raster, int cols, int rows, byte[] row) throws IOException {
+        for (int y = 0; y < rows; y++) {
+            int base = y * cols;
+            for (int x = 0; x < cols; x++) {
+                int argb = raster[base + x];
+                int o = x * 4;
+                row[o] = (byte) (argb >>> 24);
+                row[o + 1] = (byte) (argb >>> 16);
+                row[o + 2] = (byte) (argb >>> 8);
+                row[o + 3] = (byte) argb;
+            }
+            out.write(row, 0, cols * 4);
+        }
+    }
+
+    private static PixelBuffer readArgb(DataInputStream in, int cols, int rows, byte[] row) throws IOException {
+        PixelBuffer buffer = new PixelBuffer(cols, rows);
+        int[] pixels = buffer.getPixels();
+        for (int y = 0; y < rows; y++) {
+            in.readFully(row, 0, cols * 4);
+            int base = y * cols;
+            for (int x = 0; x < cols; x++) {
+                int o = x * 4;
+                pixels[base + x] = ((row[o] & 0xFF) << 24) | ((row[o + 1] & 0xFF) << 16)
+                        | ((row[o + 2] & 0xFF) << 8) | (row[o + 3] & 0xFF);
+            }
+        }
+        return buffer;
+    }
+
+    private static PixelBuffer readIndices(DataInputStream in, int cols, int rows,
+                                           int[] palette, int width, byte[] row) throws IOException {
+        PixelBuffer buffer = new PixelBuffer(cols, rows);
+        int[] pixels = buffer.getPixels();
+        for (int y = 0; y < rows; y++) {
+            in.readFully(row, 0, cols * width);
+            int base = y * cols;
+            for (int x = 0; x < cols; x++) {
+                int o = x * width;
+                int index;
+                switch (width) {
+                    case 1:
+                        index = row[o] & 0xFF;
+                        break;
+                    case 2:
+                        index = ((row[o] & 0xFF) << 8) | (row[o + 1] & 0xFF);
+                        break;
+                    default:
+                        index = ((row[o] & 0xFF) << 24) | ((row[o + 1] & 0xFF) << 16)
+                                | ((row[o + 2] & 0xFF) << 8) | (row[o + 3] & 0xFF);
+                }
+                if (index >= palette.length) throw new IOException("Corrupt project: color index out of range");
+                pixels[base + x] = palette[index];
+            }
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,197 @@
+import java.util.ArrayDeque;
+
+/**
+ * Undo/redo history for a PixelBuffer that stores only the pixels each edit changed.
+ * An edit is bracketed by begin() and commit(); commit() diffs the buffer against the
+ * snapshot taken by begin() and records the changed pixels as a sparse list. Once the
+ * recorded edits exceed the byte budget the oldest ones are dropped.
+ */
+public class UndoHistory {
+    public static final long DEFAULT_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    private final ArrayDeque<Edit> undoStack = new ArrayDeque<>();
+    private final ArrayDeque<Edit> redoStack = new ArrayDeque<>();
+    private long budgetBytes = DEFAULT_BUDGET_BYTES;
+    private long usedBytes = 0;
+
+    // Snapshot taken by begin(), reused between edits so a stroke does not allocate
+    private int[] baseline = new int[0];
+    private int baseWidth, baseHeight;
+    private boolean recording = false;
+
+    /**
+     * One recorded edit. When indices is null the edit changed the buffer size (or most of
+     * its pixels) and before/after hold whole rasters instead of a sparse pixel list.
+     */
+    private static final class Edit {
+        final int beforeWidth, beforeHeight, afterWidth, afterHeight;
+        final int[] indices;
+        final int[] before;
+        final int[] after;
+
+        Edit(int beforeWidth, int beforeHeight, int afterWidth, int afterHeight, int[] indices, int[] before, int[] after) {
+            this.beforeWidth = beforeWidth;
+            this.beforeHeight = beforeHeight;
+            this.afterWidth = afterWidth;
+            this.afterHeight = afterHeight;
+            this.indices = indices;
+            this.before = before;
+            this.after = after;
+        }
+
+        long bytes() {
+            long n = 4L * (before.length + after.length) + 32;
+            if (indices != null) n += 4L * indices.length;
+            return n;
+        }
+    }
+
+    /**
+     * Starts recording an edit by snapshotting the current pixels.
+     * @param current the buffer about to be edited
+     */
+    public void begin(PixelBuffer current) {
+        int n = current.getWidth() * current.getHeight();
+        if (baseline.length < n) baseline = new int[n];
+        System.arraycopy(current.getPixels(), 0, baseline, 0, n);
+        baseWidth = current.getWidth();
+        baseHeight = current.getHeight();
+        recording = true;
+    }
+
+    /**
+     * Finishes the edit started by begin() and records whatever changed.
+     * @param current the buffer after the edit (may be a different instance or size)
+     * @return true if an undo step was recorded, false if nothing changed
+     */
+    public boolean commit(PixelBuffer current) {
+        if (!recording) return false;
+        recording = false;
+        int[] pixels = current.getPixels();
+        int w = current.getWidth(), h = current.getHeight();
+        Edit edit;
+        if (w != baseWidth || h != baseHeight) {
+            int[] before = new int[baseWidth * baseHeight];
+            System.arraycopy(baseline, 0, before, 0, before.length);
+            int[] after = new int[w * h];
+            System.arraycopy(pixels, 0, after, 0, after.length);
+            edit = new Edit(baseWidth, baseHeight, w, h, null, before, after);
+        } else {
+            int n = w * h;
+            int changed = 0;
+            for (int i = 0; i < n; i++) {
+                if (pixels[i] != baseline[i]) changed++;
+            }
+            if (changed == 0) return false;
+            if (changed * 3 >= n * 2) {
+                // A sparse list would cost more than two whole rasters
+                int[] before = new int[n];
+                System.arraycopy(baseline, 0, before, 0, n);
+                int[] after = new int[n];
+                System.arraycopy(pixels, 0, after, 0, n);
+                edit = new Edit(w, h, w, h, null, before, after);
+            } else {
+                int[] indices = new int[changed];
+                int[] before = new int[changed];
+                int[] after = new int[changed];
+                int k = 0;
+                for (int i = 0; i < n; i++) {
+                    if (pixels[i] != baseline[i]) {
+                        indices[k] = i;
+                        before[k] = baseline[i];
+                        after[k] = pixels[i];
+                        k++;
+                    }
+                }
+                edit = new Edit(w, h, w, h, indices, before, after);
+            }
+        }
+        for (Edit e : redoStack) usedBytes -= e.bytes();
+        redoStack.clear();
+        undoStack.addLast(edit);
+        usedBytes += edit.bytes();
+        trimToBudget();
+        return true;
+    }
+
+    /**
+     * Reverts the newest edit.
+     * @param current the buffer currently shown
+     * @return the buffer to show afterwards; the same instance unless the edit resized it
+     */
+    public PixelBuffer undo(PixelBuffer current) {
+        if (undoStack.isEmpty()) return current;
+        recording = false;
+        Edit edit = undoStack.removeLast();
+        redoStack.addLast(edit);
+        return apply(current, edit, edit.before, edit.beforeWidth, edit.beforeHeight);
+    }
+
+    /**
+     * Re-applies the most recently undone edit.
+     * @param current the buffer currently shown
+     * @return the buffer to show afterwards; the same instance unless the edit resized it
+     */
+    public PixelBuffer redo(PixelBuffer current) {
+        if (redoStack.isEmpty()) return current;
+        recording = false;
+        Edit edit = redoStack.removeLast();
+        undoStack.addLast(edit);
+        return apply(current, edit, edit.after, edit.afterWidth, edit.afterHeight);
+    }
+
+    private static PixelBuffer apply(PixelBuffer current, Edit edit, int[] values, int w, int h) {
+        if (edit.indices == null) {
+            if (current.getWidth() == w && current.getHeight() == h) {
+                System.arraycopy(values, 0, current.getPixels(), 0, w * h);
+                return current;
+            }
+            return new PixelBuffer(w, h, values.clone());
+        }
+        int[] pixels = current.getPixels();
+        int[] indices = edit.indices;
+        for (int i = 0; i < indices.length; i++) {
+            pixels[indices[i]] = values[i];
+        }
+        return current;
+    }
+
+    private void trimToBudget() {
+        // Always keep the newest edit, even when it alone is over budget
+        while (usedBytes > budgetBytes && undoStack.size() > 1) {
+            usedBytes -= undoStack.removeFirst().bytes();
+        }
+    }
+
+    public boolean canUndo() { return !undoStack.isEmpty(); }
+    public boolean canRedo() { return !redoStack.isEmpty(); }
+
+    public int getUndoCount() { return undoStack.size(); }
+    public int getRedoCount() { return redoStack.size(); }
+
+    /**
+     * @return bytes held by recorded undo and redo steps
+     */
+    public long getMemoryUsed() { return usedBytes; }
+
+    public long getBudget() { return budgetBytes; }
+
+    /**
+     * Sets the byte budget, dropping the oldest undo steps if it is already exceeded.
+     * @param bytes maximum bytes to keep for undo and redo steps
+     */
+    public void setBudget(long bytes) {
+        this.budgetBytes = Math.max(0, bytes);
+        trimToBudget();
+    }
+
+    /**
+     * Forgets all steps, e.g. when the edited buffer is replaced by unrelated content.
+     */
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+        usedBytes = 0;
+        recording = false;
+    }
+}
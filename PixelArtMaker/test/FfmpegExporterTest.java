@@ -0,0 +1,163 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs FfmpegExporter against shell scripts standing in for ffmpeg. They take the same
+ * arguments, so the tests see exactly what ffmpeg would be sent, without needing it installed.
+ */
+public class FfmpegExporterTest {
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File output;
+
+    @Before
+    public void setUp() {
+        assumeTrue("stand-in scripts need /bin/sh", new File("/bin/sh").canExecute());
+        output = new File(temp.getRoot(), "out.mp4");
+    }
+
+    @Test
+    public void timelineTickIsTheCommonDivisorOfTheDelays() {
+        FfmpegExporter exporter = new FfmpegExporter(new ArrayList<>(), 1, 0);
+        assertEquals(50, exporter.timelineTick(new int[] {100, 150, 50, 500}));
+        assertEquals(100, exporter.timelineTick(new int[] {100, 300}));
+        // A 1 ms divisor would mean 1000 fps; the 60 fps step is used instead
+        assertEquals(17, exporter.timelineTick(new int[] {33, 100}));
+    }
+
+    @Test
+    public void framesArePipedAsRawRgbOnTheirDelays() throws IOException {
+        // Saves its arguments and everything it reads from stdin
+        File fake = script("fake-ffmpeg",
+                "for a in \"$@\"; do out=\"$a\"; done",
+                "echo \"$@\" > \"$out.args\"",
+                "cat > \"$out\"");
+        List<AnimationFrame> frames = frames(100, 150, 50, 300);
+        FfmpegExporter exporter = new FfmpegExporter(frames, 2, 1);
+        exporter.setExecutable(fake.getPath());
+        exporter.setLoopDelay(200);
+        assertTrue(exporter.export(output, ExportProgress.NONE));
+
+        String args = new String(Files.readAllBytes(new File(output.getPath() + ".args").toPath()),
+                StandardCharsets.UTF_8).trim();
+        assertTrue(args, args.contains("-f rawvideo -pix_fmt rgb24 -s 8x6 -framerate 1000/50 -i -"));
+        assertTrue(args, args.endsWith(output.getAbsolutePath()));
+
+        // 100+150+50+(300+200) ms on a 50 ms timeline: 2, 3, 1 and 10 ticks
+        byte[] video = Files.readAllBytes(output.toPath());
+        int frameBytes = 8 * 6 * 3;
+        assertEquals(16 * frameBytes, video.length);
+        int[] ticks = {2, 3, 1, 10};
+        for (int f = 0, tick = 0; f < ticks.length; f++) {
+            byte[] expected = rgb(frames.get(f).data, 2, 0xFF000000);
+            for (int t = 0; t < ticks[f]; t++, tick++) {
+                assertArrayEquals("tick " + tick, expected,
+                        Arrays.copyOfRange(video, tick * frameBytes, (tick + 1) * frameBytes));
+            }
+        }
+    }
+
+    @Test
+    public void failureReportsTheProgramOutput() throws IOException {
+        File fake = script("failing-ffmpeg",
+                "echo \"Unknown encoder 'libx264'\"",
+                "exit 1");
+        // Small frames fit in the pipe buffer, large ones hit the closed pipe while writing
+        for (int pixelSize : new int[] {1, 64}) {
+            FfmpegExporter exporter = new FfmpegExporter(frames(100, 100, 100), pixelSize, 0);
+            exporter.setExecutable(fake.getPath());
+            try {
+                exporter.export(output, ExportProgress.NONE);
+                fail("export should fail");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("Unknown encoder 'libx264'"));
+            }
+            assertFalse(output.exists());
+        }
+    }
+
+    @Test
+    public void cancelStopsTheProgramAndRemovesTheOutput() throws IOException {
+        File fake = script("slow-ffmpeg",
+                "for a in \"$@\"; do out=\"$a\"; done",
+                ": > \"$out\"",
+                "cat > /dev/null");
+        FfmpegExporter exporter = new FfmpegExporter(frames(100, 100, 100, 100), 2, 0);
+        exporter.setExecutable(fake.getPath());
+        boolean done = exporter.export(output, new ExportProgress() {
+            @Override
+            public void frameDone(int done, int total) {}
+
+            @Override
+            public boolean isCancelled() {
+                // Cancel once the program has started writing its output
+                long until = System.currentTimeMillis() + 5000;
+                while (!output.exists() && System.currentTimeMillis() < until) Thread.yield();
+                return true;
+            }
+        });
+        assertFalse(done);
+        assertFalse(output.exists());
+    }
+
+    @Test
+    public void availabilityChecksTheVersionBanner() throws IOException {
+        assertTrue(FfmpegExporter.isAvailable(script("ffmpeg-banner", "echo 'ffmpeg version 6.0'").getPath()));
+        assertFalse(FfmpegExporter.isAvailable(script("other-banner", "echo 'hello'").getPath()));
+        assertFalse(FfmpegExporter.isAvailable(new File(temp.getRoot(), "missing").getPath()));
+    }
+
+    private File script(String name, String... lines) throws IOException {
+        File f = temp.newFile(name);
+        List<String> content = new ArrayList<>();
+        content.add("#!/bin/sh");
+        content.addAll(Arrays.asList(lines));
+        Files.write(f.toPath(), content, StandardCharsets.UTF_8);
+        assertTrue(f.setExecutable(true));
+        return f;
+    }
+
+    // 4x3 frames with a different colored cell in each and the rest transparent
+    private static List<AnimationFrame> frames(int... delays) {
+        List<AnimationFrame> frames = new ArrayList<>();
+        for (int f = 0; f < delays.length; f++) {
+            PixelBuffer p = new PixelBuffer(4, 3);
+            p.set(f % 4, f % 3, 0xFF102030 + f * 0x111111);
+            frames.add(AnimationFrame.wrap(p, delays[f]));
+        }
+        return frames;
+    }
+
+    private static byte[] rgb(PixelBuffer frame, int pixelSize, int background) {
+        int w = frame.getWidth() * pixelSize, h = frame.getHeight() * pixelSize;
+        byte[] out = new byte[w * h * 3];
+        for (int y = 0, o = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int c = frame.get(x / pixelSize, y / pixelSize);
+                if (c == PixelBuffer.TRANSPARENT) c = background;
+                out[o++] = (byte) (c >> 16);
+                out[o++] = (byte) (c >> 8);
+                out[o++] = (byte) c;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,113 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+
+import org.junit.Test;
+
+/**
+ * Round-trips GifEncoder output through the ImageIO GIF decoder.
+ */
+public class GifEncoderTest {
+
+    @Test
+    public void tableBitsCoversColorCount() {
+        assertEquals(1, GifEncoder.tableBits(1));
+        assertEquals(1, GifEncoder.tableBits(2));
+        assertEquals(2, GifEncoder.tableBits(3));
+        assertEquals(4, GifEncoder.tableBits(16));
+        assertEquals(5, GifEncoder.tableBits(17));
+        assertEquals(8, GifEncoder.tableBits(256));
+    }
+
+    @Test
+    public void twoColorFrameRoundTrips() throws IOException {
+        byte[] pixels = new byte[37 * 11];
+        for (int i = 0; i < pixels.length; i++) pixels[i] = (byte) ((i / 3) & 1);
+        assertDecodesTo(pixels, 37, 11, 2);
+    }
+
+    @Test
+    public void longRunsRoundTrip() throws IOException {
+        byte[] pixels = new byte[500 * 500];
+        for (int i = 250000 / 2; i < pixels.length; i++) pixels[i] = 3;
+        assertDecodesTo(pixels, 500, 500, 4);
+    }
+
+    @Test
+    public void noiseFillingTheCodeTableRoundTrips() throws IOException {
+        // 90,000 random indices out of 256 need far more than 4096 codes,
+        // so the encoder has to emit clear codes and restart its table several times
+        Random random = new Random(1);
+        byte[] pixels = new byte[300 * 300];
+        for (int i = 0; i < pixels.length; i++) pixels[i] = (byte) random.nextInt(256);
+        assertDecodesTo(pixels, 300, 300, 256);
+    }
+
+    @Test
+    public void tableResetInsideRunsRoundTrips() throws IOException {
+        // Alternating runs and noise, so the reset lands in the middle of both kinds of string
+        Random random = new Random(2);
+        byte[] pixels = new byte[256 * 256];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) ((i / 700) % 2 == 0 ? 5 : random.nextInt(32));
+        }
+        assertDecodesTo(pixels, 256, 256, 32);
+    }
+
+    @Test
+    public void localColorTablesAreUsedPerFrame() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] pixels = {0, 1, 2, 1};
+        byte[] data = GifEncoder.encodeImageData(pixels, pixels.length, 3);
+        try (GifEncoder gif = new GifEncoder(bytes, 2, 2, null, 0)) {
+            gif.writeFrame(0, 0, 2, 2, new int[] {0xFF000000, 0xFFFF0000, 0xFF00FF00}, 100,
+                    GifEncoder.DISPOSE_NONE, -1, data);
+            gif.writeFrame(0, 0, 2, 2, new int[] {0xFFFFFFFF, 0xFF0000FF, 0xFF123456}, 100,
+                    GifEncoder.DISPOSE_NONE, -1, data);
+        }
+        ImageReader reader = reader(bytes.toByteArray());
+        assertEquals(2, reader.getNumImages(true));
+        BufferedImage first = reader.read(0), second = reader.read(1);
+        assertEquals(0xFFFF0000, first.getRGB(1, 0));
+        assertEquals(0xFF00FF00, first.getRGB(0, 1));
+        assertEquals(0xFF0000FF, second.getRGB(1, 0));
+        assertEquals(0xFF123456, second.getRGB(0, 1));
+    }
+
+    /**
+     * Writes the indices as a single frame over a gray ramp palette and compares the
+     * decoded indices.
+     */
+    private static void assertDecodesTo(byte[] pixels, int width, int height, int colorCount) throws IOException {
+        int[] palette = new int[colorCount];
+        for (int i = 0; i < colorCount; i++) palette[i] = 0xFF000000 | i * 0x010101;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GifEncoder gif = new GifEncoder(bytes, width, height, palette, -1)) {
+            gif.writeFrame(0, 0, width, height, null, 100, GifEncoder.DISPOSE_NONE, -1,
+                    GifEncoder.encodeImageData(pixels, pixels.length, colorCount));
+        }
+        BufferedImage img = reader(bytes.toByteArray()).read(0);
+        assertEquals(width, img.getWidth());
+        assertEquals(height, img.getHeight());
+        Raster raster = img.getRaster();
+        byte[] decoded = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) decoded[y * width + x] = (byte) raster.getSample(x, y, 0);
+        }
+        assertArrayEquals(pixels, decoded);
+    }
+
+    static ImageReader reader(byte[] gif) throws IOException {
+        ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+        reader.setInput(ImageIO.createImageInputStream(new ByteArrayInputStream(gif)));
+        return reader;
+    }
+}
@@ -0,0 +1,203 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Decodes GifExporter output frame by frame, applying each frame's offset, transparency
+ * and disposal the way a viewer does, and compares every displayed screen with the
+ * source frames, including the loop back to the first frame.
+ */
+public class GifExporterTest {
+    private static final int SIZE = 48;
+    private static final int PIXEL_SIZE = 2;
+    private static final int FRAMES = 24;
+    private static final int LOOP_DELAY = 500;
+
+    private File out;
+
+    @Before
+    public void setUp() throws IOException {
+        out = File.createTempFile("gif-exporter-test", ".gif");
+    }
+
+    @After
+    public void tearDown() {
+        out.delete();
+    }
+
+    @Test
+    public void movingSpriteComposites() throws IOException {
+        for (int mode = 0; mode <= 2; mode++) assertPlaysBack(sprite(), mode);
+    }
+
+    @Test
+    public void mostlyStillFramesComposite() throws IOException {
+        for (int mode = 0; mode <= 2; mode++) assertPlaysBack(idle(), mode);
+    }
+
+    @Test
+    public void unrelatedFramesComposite() throws IOException {
+        for (int mode = 0; mode <= 2; mode++) assertPlaysBack(noise(), mode);
+    }
+
+    @Test
+    public void stillFramesOnlyWriteTheChangedRegion() throws IOException {
+        export(idle(), 0);
+        ImageReader reader = GifEncoderTest.reader(Files.readAllBytes(out.toPath()));
+        // Only a few cells change after the first frame
+        for (int f = 1; f < FRAMES; f++) {
+            BufferedImage img = reader.read(f);
+            assertTrue("frame " + f + " is " + img.getWidth() + "x" + img.getHeight(),
+                    img.getWidth() * img.getHeight() < SIZE * SIZE * PIXEL_SIZE * PIXEL_SIZE / 4);
+        }
+    }
+
+    @Test
+    public void cancelledExportReturnsFalse() throws IOException {
+        GifExporter exporter = new GifExporter(noise(), PIXEL_SIZE, 0);
+        boolean done = exporter.export(out, new ExportProgress() {
+            @Override public void frameDone(int done, int total) {}
+            @Override public boolean isCancelled() { return true; }
+        });
+        assertFalse(done);
+    }
+
+    private void export(List<AnimationFrame> frames, int mode) throws IOException {
+        GifExporter exporter = new GifExporter(frames, PIXEL_SIZE, mode);
+        exporter.setLoopDelay(LOOP_DELAY);
+        assertTrue(exporter.export(out, ExportProgress.NONE));
+    }
+
+    private void assertPlaysBack(List<AnimationFrame> frames, int mode) throws IOException {
+        export(frames, mode);
+        ImageReader reader = GifEncoderTest.reader(Files.readAllBytes(out.toPath()));
+        int count = reader.getNumImages(true);
+        assertEquals(FRAMES, count);
+
+        int w = SIZE * PIXEL_SIZE;
+        int[] screen = new int[w * w]; // starts transparent
+        int[] previous = null;
+        String previousDisposal = null;
+        // One extra step shows the first frame again after the last one is disposed
+        for (int step = 0; step <= count; step++) {
+            int f = step % count;
+            if (previous != null && previousDisposal.equals("restoreToBackgroundColor")) {
+                for (int y = previous[1]; y < previous[1] + previous[3]; y++) {
+                    Arrays.fill(screen, y * w + previous[0], y * w + previous[0] + previous[2], 0);
+                }
+            }
+            BufferedImage img = reader.read(f);
+            IIOMetadata metadata = reader.getImageMetadata(f);
+            Node root = metadata.getAsTree("javax_imageio_gif_image_1.0");
+            Element descriptor = child(root, "ImageDescriptor");
+            Element control = child(root, "GraphicControlExtension");
+            int left = Integer.parseInt(descriptor.getAttribute("imageLeftPosition"));
+            int top = Integer.parseInt(descriptor.getAttribute("imageTopPosition"));
+            boolean transparent = control.getAttribute("transparentColorFlag").equals("TRUE");
+            int transparentIndex = Integer.parseInt(control.getAttribute("transparentColorIndex"));
+
+            int delay = Integer.parseInt(control.getAttribute("delayTime")) * 10;
+            int expectedDelay = frames.get(f).delay + (f == count - 1 ? LOOP_DELAY : 0);
+            assertEquals("delay of frame " + f, expectedDelay, delay);
+
+            Raster raster = img.getRaster();
+            ColorModel colors = img.getColorModel();
+            for (int y = 0; y < img.getHeight(); y++) {
+                for (int x = 0; x < img.getWidth(); x++) {
+                    int index = raster.getSample(x, y, 0);
+                    if (transparent && index == transparentIndex) continue;
+                    screen[(top + y) * w + left + x] = colors.getRGB(index) | 0xFF000000;
+                }
+            }
+            previous = new int[] {left, top, img.getWidth(), img.getHeight()};
+            previousDisposal = control.getAttribute("disposalMethod");
+
+            PixelBuffer expected = frames.get(f).data;
+            for (int y = 0; y < w; y++) {
+                for (int x = 0; x < w; x++) {
+                    int cell = expected.get(x / PIXEL_SIZE, y / PIXEL_SIZE);
+                    if (cell == PixelBuffer.TRANSPARENT) cell = background(mode);
+                    assertEquals("mode " + mode + ", step " + step + ", pixel " + x + "," + y,
+                            cell, screen[y * w + x]);
+                }
+            }
+        }
+    }
+
+    private static int background(int mode) {
+        return mode == 0 ? 0xFFFFFFFF : mode == 1 ? 0xFF000000 : 0;
+    }
+
+    private static Element child(Node node, String name) {
+        for (Node c = node.getFirstChild(); c != null; c = c.getNextSibling()) {
+            if (c.getNodeName().equals(name)) return (Element) c;
+        }
+        throw new AssertionError("No " + name + " in frame metadata");
+    }
+
+    // An 8x8 block moving across an empty canvas, wrapping at the edges
+    private static List<AnimationFrame> sprite() {
+        List<AnimationFrame> frames = new ArrayList<>();
+        for (int f = 0; f < FRAMES; f++) {
+            PixelBuffer p = new PixelBuffer(SIZE, SIZE);
+            for (int y = 0; y < 8; y++) {
+                for (int x = 0; x < 8; x++) p.set((f * 2 + x) % SIZE, (f + y) % SIZE, 0xFFFF0000 | x * 16);
+            }
+            frames.add(AnimationFrame.wrap(p, 40 + f * 10));
+        }
+        return frames;
+    }
+
+    // A fixed scene where a few cells change, some of them to transparent
+    private static List<AnimationFrame> idle() {
+        Random random = new Random(5);
+        PixelBuffer base = new PixelBuffer(SIZE, SIZE);
+        int[] cells = base.getPixels();
+        for (int i = 0; i < cells.length; i++) {
+            if (random.nextInt(3) > 0) cells[i] = 0xFF000000 | random.nextInt(6) * 0x203040;
+        }
+        List<AnimationFrame> frames = new ArrayList<>();
+        for (int f = 0; f < FRAMES; f++) {
+            PixelBuffer p = base.copy();
+            p.set(10 + f % 3, 10, 0xFF00FF00);
+            if (f % 4 == 0) p.set(30, 30, PixelBuffer.TRANSPARENT);
+            frames.add(AnimationFrame.wrap(p, 40 + f * 10));
+        }
+        return frames;
+    }
+
+    // Unrelated random frames, with one frame repeated
+    private static List<AnimationFrame> noise() {
+        Random random = new Random(5);
+        List<AnimationFrame> frames = new ArrayList<>();
+        for (int f = 0; f < FRAMES; f++) {
+            PixelBuffer p = new PixelBuffer(SIZE, SIZE);
+            int[] cells = p.getPixels();
+            for (int i = 0; i < cells.length; i++) {
+                if (random.nextInt(2) > 0) cells[i] = 0xFF000000 | random.nextInt(6) * 0x203040;
+            }
+            if (f == 5) p = frames.get(4).data.copy();
+            frames.add(AnimationFrame.wrap(p, 40 + f * 10));
+        }
+        return frames;
+    }
+}
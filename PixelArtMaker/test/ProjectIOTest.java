@@ -0,0 +1,199 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes projects with ProjectIO, reads them back and compares every cell and setting,
+ * for both compressions, every index width and the memory-mapped path.
+ */
+public class ProjectIOTest {
+    private static final int HEADER_SIZE = 4 + 2 + 1 + 7 * 4;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void fewColorsUseOneByteIndices() throws IOException {
+        assertRoundTrips(project(40, 30, 3, 200), 1);
+    }
+
+    @Test
+    public void moreThan256ColorsUseTwoByteIndices() throws IOException {
+        assertRoundTrips(project(40, 30, 3, 3000), 2);
+    }
+
+    @Test
+    public void moreThan65536ColorsUseFourByteIndices() throws IOException {
+        assertRoundTrips(project(300, 300, 2, 300 * 300), 4);
+    }
+
+    @Test
+    public void framesOfAnotherSizeAreStoredAtTheCanvasSize() throws IOException {
+        ProjectIO.Project p = project(20, 10, 2, 50);
+        p.frames.add(AnimationFrame.wrap(cells(30, 15, 50, 7), 90));
+        p.frames.add(AnimationFrame.wrap(cells(5, 4, 50, 8), 110));
+        for (int compression : new int[] {ProjectIO.COMPRESSION_DEFLATE, ProjectIO.COMPRESSION_STORED}) {
+            ProjectIO.Project read = writeAndRead(p, compression, ProjectIO.MAP_THRESHOLD_BYTES);
+            assertEquals(4, read.frames.size());
+            for (int i = 0; i < 4; i++) {
+                assertSameCells("frame " + i, p.frames.get(i).data.resized(20, 10), read.frames.get(i).data);
+            }
+        }
+    }
+
+    @Test
+    public void projectWithoutFramesRoundTrips() throws IOException {
+        ProjectIO.Project p = project(8, 8, 0, 10);
+        p.frames = null;
+        ProjectIO.Project read = writeAndRead(p, ProjectIO.COMPRESSION_DEFLATE, ProjectIO.MAP_THRESHOLD_BYTES);
+        assertSameCells("canvas", p.canvas, read.canvas);
+        assertTrue(read.frames.isEmpty());
+    }
+
+    @Test
+    public void largeAnimationsAreMapped() throws IOException {
+        ProjectIO.Project p = project(40, 30, 6, 500);
+        for (int compression : new int[] {ProjectIO.COMPRESSION_DEFLATE, ProjectIO.COMPRESSION_STORED}) {
+            // Any frame data is over a 1 byte threshold
+            ProjectIO.Project read = writeAndRead(p, compression, 1);
+            assertTrue(read.frames instanceof MappedFrameList);
+            assertSameProject(p, read);
+            ((MappedFrameList) read.frames).close();
+        }
+    }
+
+    @Test
+    public void legacyTextProjectsAreRead() throws IOException {
+        File f = temp.newFile("legacy.pam");
+        Files.write(f.toPath(), Arrays.asList(
+                "3 2 12",
+                "#ff0000 #00000000 #0a0b0c",
+                "null   #00FF00 #FFFFFF"), StandardCharsets.UTF_8);
+        ProjectIO.Project read = ProjectIO.read(f);
+        assertEquals(3, read.cols);
+        assertEquals(2, read.rows);
+        assertEquals(12, read.pixelSize);
+        assertNull(read.frames);
+        assertArrayEquals(new int[] {
+                0xFFFF0000, PixelBuffer.TRANSPARENT, 0xFF0A0B0C,
+                PixelBuffer.TRANSPARENT, 0xFF00FF00, 0xFFFFFFFF}, read.canvas.getPixels());
+    }
+
+    @Test
+    public void brokenFilesAreRejected() throws IOException {
+        File f = temp.newFile("short.pam");
+        Files.write(f.toPath(), Arrays.asList("3 2 12", "#ff0000 #00ff00"), StandardCharsets.UTF_8);
+        assertRejected(f);
+
+        ProjectIO.Project p = project(20, 10, 3, 50);
+        File binary = temp.newFile("truncated.pam");
+        ProjectIO.write(binary, p, ProjectIO.COMPRESSION_STORED);
+        byte[] bytes = Files.readAllBytes(binary.toPath());
+        Files.write(binary.toPath(), Arrays.copyOf(bytes, bytes.length - 100));
+        assertRejected(binary);
+    }
+
+    private void assertRoundTrips(ProjectIO.Project p, int indexWidth) throws IOException {
+        ProjectIO.Project read = writeAndRead(p, ProjectIO.COMPRESSION_DEFLATE, ProjectIO.MAP_THRESHOLD_BYTES);
+        assertSameProject(p, read);
+        assertEquals("index width", indexWidth, deflatedIndexWidth(p));
+        assertSameProject(p, writeAndRead(p, ProjectIO.COMPRESSION_STORED, ProjectIO.MAP_THRESHOLD_BYTES));
+    }
+
+    private ProjectIO.Project writeAndRead(ProjectIO.Project p, int compression, long mapThreshold) throws IOException {
+        File f = temp.newFile();
+        ProjectIO.write(f, p, compression);
+        return ProjectIO.read(f, mapThreshold);
+    }
+
+    // Unpacks a compressed file and works out the index width from the size of its body
+    private int deflatedIndexWidth(ProjectIO.Project p) throws IOException {
+        File f = temp.newFile();
+        ProjectIO.write(f, p, ProjectIO.COMPRESSION_DEFLATE);
+        byte[] bytes = Files.readAllBytes(f.toPath());
+        int bodyOffset = HEADER_SIZE + 4 * p.frames.size();
+        DataInputStream z = new DataInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(bytes, bodyOffset, bytes.length - bodyOffset)));
+        int paletteSize = z.readInt();
+        long indexBytes = -4L * paletteSize;
+        while (z.read() >= 0) indexBytes++;
+        long cells = (long) p.cols * p.rows * (1 + p.frames.size());
+        assertEquals(0, indexBytes % cells);
+        return (int) (indexBytes / cells);
+    }
+
+    private static void assertSameProject(ProjectIO.Project expected, ProjectIO.Project read) {
+        assertEquals(expected.cols, read.cols);
+        assertEquals(expected.rows, read.rows);
+        assertEquals(expected.pixelSize, read.pixelSize);
+        assertEquals(expected.backgroundMode, read.backgroundMode);
+        assertEquals(expected.loopDelay, read.loopDelay);
+        assertEquals(expected.currentFrame, read.currentFrame);
+        assertSameCells("canvas", expected.canvas, read.canvas);
+        assertEquals(expected.frames.size(), read.frames.size());
+        for (int i = 0; i < expected.frames.size(); i++) {
+            assertEquals("delay of frame " + i, expected.frames.get(i).delay, read.frames.get(i).delay);
+            assertSameCells("frame " + i, expected.frames.get(i).data, read.frames.get(i).data);
+        }
+    }
+
+    private static void assertSameCells(String what, PixelBuffer expected, PixelBuffer read) {
+        assertEquals(what + " width", expected.getWidth(), read.getWidth());
+        assertEquals(what + " height", expected.getHeight(), read.getHeight());
+        assertArrayEquals(what, expected.getPixels(), read.getPixels());
+    }
+
+    private static void assertRejected(File f) {
+        try {
+            ProjectIO.read(f);
+            fail(f.getName() + " should not be read");
+        } catch (IOException expected) {
+            // Rejected
+        }
+    }
+
+    // A canvas and frames drawing on the same set of colors, with some transparent cells
+    private static ProjectIO.Project project(int cols, int rows, int frameCount, int colors) {
+        ProjectIO.Project p = new ProjectIO.Project();
+        p.cols = cols;
+        p.rows = rows;
+        p.pixelSize = 7;
+        p.backgroundMode = 2;
+        p.loopDelay = 250;
+        p.currentFrame = Math.max(0, frameCount - 1);
+        p.canvas = cells(cols, rows, colors, 0);
+        p.frames = new ArrayList<>();
+        for (int f = 0; f < frameCount; f++) {
+            p.frames.add(AnimationFrame.wrap(cells(cols, rows, colors, f + 1), 40 + f * 30));
+        }
+        return p;
+    }
+
+    // Cycles through the colors so every one of them is used once the buffer is large enough
+    private static PixelBuffer cells(int cols, int rows, int colors, int seed) {
+        PixelBuffer p = new PixelBuffer(cols, rows);
+        int[] pixels = p.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            int c = (i + seed * 17) % colors;
+            pixels[i] = c == 0 ? PixelBuffer.TRANSPARENT : 0xFF000000 | c * 37;
+        }
+        return p;
+    }
+}